@@ -0,0 +1,300 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ *
+ * An index of building names for autocompletion. Short names, full names and
+ * every word of the full names are stored in a trie, so a prefix lookup is a walk
+ * down the trie to a node holding its precomputed best completions. Misspelled
+ * queries are matched by walking the trie while tracking the edit distance
+ * to the query, giving up on branches that can no longer be within range.
+ *
+ */
+public class BuildingIndex {
+
+    // Representation:
+    // names holds the short names of all the buildings, ordered by rank:
+    // shorter names first, then alphabetically. A building is identified by its
+    // position in names. root is the root of a trie over the lower case keys of
+    // the buildings: the short name, the full name, and the full name starting
+    // at each of its words.
+
+    // Abstraction function:
+    // A node reached by following the characters of a string s from root holds in
+    // ids the buildings with s as a key, and in top the best ranked MAX_RESULTS
+    // buildings having a key that starts with s.
+
+    // Most results kept for each prefix
+    public static final int MAX_RESULTS = 16;
+
+    private final String[] names;
+    private final Map<String,String> shortToLong;
+    private final Map<String,String> exact;
+    private final Node root;
+
+    /**
+     * A node of the trie.
+     */
+    private static class Node {
+        private final Map<Character,Node> children = new HashMap<Character,Node>();
+        private int[] ids = new int[0];
+        private int[] top = new int[0];
+    }
+
+    /**
+     * @param shortToLong map of short names of buildings to their full names
+     * @effects Constructs an index over the short and full names of the buildings
+     */
+    public BuildingIndex(Map<String,String> shortToLong) {
+        this.shortToLong = new HashMap<String,String>(shortToLong);
+        this.exact = new HashMap<String,String>();
+        this.root = new Node();
+
+        List<String> ranked = new ArrayList<String>(shortToLong.keySet());
+        Collections.sort(ranked, new Comparator<String>() {
+            public int compare(String s1, String s2) {
+                if(s1.length() != s2.length()) {
+                    return s1.length() - s2.length();
+                }
+                return s1.compareTo(s2);
+            }
+        });
+        names = ranked.toArray(new String[ranked.size()]);
+
+        for(int id = 0; id < names.length; id++) {
+            String shortName = names[id];
+            String longName = shortToLong.get(shortName);
+            exact.put(shortName.toLowerCase(), shortName);
+            insert(shortName.toLowerCase(), id);
+            if(longName != null) {
+                String key = longName.toLowerCase();
+                if(!exact.containsKey(key)) {
+                    exact.put(key, shortName);
+                }
+                // Index the full name starting at every word so that
+                // "lib" finds "Suzzallo Library".
+                insert(key, id);
+                int i = key.indexOf(' ');
+                while(i >= 0) {
+                    if(i + 1 < key.length() && key.charAt(i + 1) != ' ') {
+                        insert(key.substring(i + 1), id);
+                    }
+                    i = key.indexOf(' ', i + 1);
+                }
+            }
+        }
+        computeTop(root);
+    }
+
+    /**
+     * @param name short or full name of a building, in any case
+     * @return short name of the building called name, or null if there is none
+     */
+    public String resolve(String name) {
+        if(name == null) {
+            return null;
+        }
+        if(shortToLong.containsKey(name)) {
+            return name;
+        }
+        return exact.get(name.toLowerCase());
+    }
+
+    /**
+     * @param prefix start of a short name, full name, or word of a full name
+     * @param limit most results to return
+     * @requires limit >= 0
+     * @return short names of the best ranked buildings, at most min(limit, MAX_RESULTS),
+     *     with a name or word starting with prefix, ignoring case
+     */
+    public List<String> prefix(String prefix, int limit) {
+        Node node = root;
+        String key = prefix.toLowerCase();
+        for(int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        List<String> result = new ArrayList<String>();
+        if(node == null) {
+            return result;
+        }
+        for(int i = 0; i < node.top.length && i < limit; i++) {
+            result.add(names[node.top[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Typo tolerant lookup. Buildings are ranked first by the number of edits
+     * needed to turn query into the start of one of their names, then
+     * complete names before prefixes, then by the rank of the building.
+     *
+     * @param query possibly misspelled start of a building name
+     * @param limit most results to return
+     * @requires limit >= 0
+     * @return short names of the best matching buildings, at most limit. Queries of
+     *     up to 4 characters allow one edit, longer queries allow two.
+     */
+    public List<String> suggest(String query, int limit) {
+        String key = query.toLowerCase();
+        int maxEdits = key.length() <= 4 ? 1 : 2;
+
+        // best[id] holds edits * 2, plus one if the match was only a prefix
+        int[] best = new int[names.length];
+        Arrays.fill(best, Integer.MAX_VALUE);
+
+        int[] row = new int[key.length() + 1];
+        for(int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        search(root, key, row, maxEdits, best);
+
+        List<Integer> found = new ArrayList<Integer>();
+        for(int id = 0; id < best.length; id++) {
+            if(best[id] != Integer.MAX_VALUE) {
+                found.add(id);
+            }
+        }
+        final int[] score = best;
+        Collections.sort(found, new Comparator<Integer>() {
+            public int compare(Integer id1, Integer id2) {
+                if(score[id1] != score[id2]) {
+                    return score[id1] - score[id2];
+                }
+                return id1 - id2;
+            }
+        });
+
+        List<String> result = new ArrayList<String>();
+        for(int i = 0; i < found.size() && i < limit; i++) {
+            result.add(names[found.get(i)]);
+        }
+        return result;
+    }
+
+    /**
+     * Levenshtein search of the trie below node.
+     *
+     * @param row edit distances between the prefix ending at node and each prefix of key
+     * @modifies best
+     * @effects lowers best[id] for each building matching key within maxEdits
+     */
+    private void search(Node node, String key, int[] row, int maxEdits, int[] best) {
+        int edits = row[key.length()];
+        if(edits <= maxEdits) {
+            for(int id : node.ids) {
+                best[id] = Math.min(best[id], edits * 2);
+            }
+            for(int id : node.top) {
+                best[id] = Math.min(best[id], edits * 2 + 1);
+            }
+        }
+
+        for(Map.Entry<Character,Node> entry : node.children.entrySet()) {
+            char c = entry.getKey();
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for(int i = 1; i < row.length; i++) {
+                int cost = key.charAt(i - 1) == c ? 0 : 1;
+                next[i] = Math.min(Math.min(next[i - 1] + 1, row[i] + 1), row[i - 1] + cost);
+                min = Math.min(min, next[i]);
+            }
+            // No extension of this branch can come back within range
+            if(min <= maxEdits) {
+                search(entry.getValue(), key, next, maxEdits, best);
+            }
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects adds building id under key
+     */
+    private void insert(String key, int id) {
+        Node node = root;
+        for(int i = 0; i < key.length(); i++) {
+            Character c = key.charAt(i);
+            Node child = node.children.get(c);
+            if(child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        for(int existing : node.ids) {
+            if(existing == id) {
+                return;
+            }
+        }
+        node.ids = Arrays.copyOf(node.ids, node.ids.length + 1);
+        node.ids[node.ids.length - 1] = id;
+    }
+
+    /**
+     * @return estimated heap used by this index beyond the building names it was
+     *     given, see FootprintReport
+     */
+    long footprint() {
+        long size = FootprintReport.object(4 * FootprintReport.REFERENCE)
+                + FootprintReport.array(names.length, FootprintReport.REFERENCE)
+                + FootprintReport.hashMap(shortToLong.size()) + FootprintReport.hashMap(exact.size());
+        for(Map.Entry<String,String> entry : exact.entrySet()) {
+            // Names already in lower case are the same String
+            if(!entry.getKey().equals(entry.getValue())) {
+                size += FootprintReport.string(entry.getKey());
+            }
+        }
+        return size + footprint(root);
+    }
+
+    /**
+     * @return estimated heap used by node and all nodes below it
+     */
+    private static long footprint(Node node) {
+        long size = FootprintReport.object(3 * FootprintReport.REFERENCE)
+                + FootprintReport.hashMap(node.children.size())
+                + FootprintReport.array(node.ids.length, 4) + FootprintReport.array(node.top.length, 4);
+        for(Map.Entry<Character,Node> child : node.children.entrySet()) {
+            // Characters above 127 are not cached by Character.valueOf
+            if(child.getKey() > 127) {
+                size += FootprintReport.object(2);
+            }
+            size += footprint(child.getValue());
+        }
+        return size;
+    }
+
+    /**
+     * @modifies node
+     * @effects fills in top for node and all nodes below it
+     */
+    private void computeTop(Node node) {
+        TreeSet<Integer> ids = new TreeSet<Integer>();
+        for(int id : node.ids) {
+            ids.add(id);
+        }
+        for(Node child : node.children.values()) {
+            computeTop(child);
+            for(int id : child.top) {
+                ids.add(id);
+            }
+        }
+        int size = Math.min(ids.size(), MAX_RESULTS);
+        node.top = new int[size];
+        int i = 0;
+        for(Integer id : ids) {
+            if(i == size) {
+                break;
+            }
+            node.top[i] = id;
+            i = i + 1;
+        }
+    }
+
+}
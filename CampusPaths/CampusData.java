@@ -1,8 +1,19 @@
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import Graph;
 
@@ -29,29 +40,106 @@ public class CampusData {
     private Map<String,Point<Double>> bToCoords;
     
     // Map where nodes are coordinates and edges
-    // are distances between them.
-    private DistGraph distGraph;
+    // are distances between them. Edits publish new versions
+    // without disturbing queries running on older ones.
+    private VersionedGraph<Point<Double>,Double> paths;
+    
+    // Index, analysis, search and route cache of a version of paths.
+    // Replaced in the background once paths has been edited, writers
+    // synchronize on this.
+    private volatile RoutingTables tables;
+    
+    // True while tables are being built for the latest version of paths,
+    // and while landmarks are being computed for tables
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final AtomicBoolean measuring = new AtomicBoolean(false);
+    
+    // Most routes cached by the tables, 0 to cache none. Off unless turned on
+    // with setRouteCacheSize; tables are republished when it changes.
+    private volatile int routeCacheSize = 0;
+    
+    // Versions of paths whose tables or landmarks could not be built, or -1
+    private volatile long failedVersion = -1;
+    private volatile long failedLandmarks = -1;
+    
+    // Build tables and compute landmarks for edited paths of every CampusData,
+    // one at a time each, so new tables are not held up by landmarks
+    private static final ExecutorService TABLE_BUILDER = builder("CampusData tables");
+    private static final ExecutorService LANDMARK_BUILDER = builder("CampusData landmarks");
+    
+    // Index of short and full building names for lookups and suggestions
+    private BuildingIndex names;
+    
+    // Lists returned by getBuildings and getShortBuildings, built once
+    private List<String> buildingList;
+    private List<String> shortList;
+    
+    // Records route queries, or null if queries are not being recorded
+    private volatile RouteTraceRecorder recorder;
+    
+    // Map of abbreviated names of buildings to their categories
+    private Map<String,Set<String>> categories;
+    
+    // Categories by node of the index they were last needed for
+    private volatile CategoryIndex categoryIndex;
     
     // Text input file containing coordinate data
-    private final String CAMPUSPATHS = "src/hw8/data/campus_paths.dat";
+    public static final String CAMPUSPATHS = "src/hw8/data/campus_paths.dat";
     // Text input file containing coordinates of buildings and abbreviated building names.
-    private final String CAMPUSBUILDINGS = "src/hw8/data/campus_buildings.dat";
+    public static final String CAMPUSBUILDINGS = "src/hw8/data/campus_buildings.dat";
+    // Text input file containing abbreviated building names and a category of each.
+    public static final String CAMPUSCATEGORIES = "src/hw8/data/campus_categories.dat";
     
     /**
      * 
-     * @effects constructs a CampusData object
+     * @effects constructs a CampusData object from the default campus data files
      */
     public CampusData() {
+        this(CAMPUSPATHS, CAMPUSBUILDINGS, CAMPUSCATEGORIES);
+    }
+    
+    /**
+     * 
+     * @param pathsFile text input file containing coordinate data
+     * @param buildingsFile text input file containing coordinates of buildings
+     *     and abbreviated building names
+     * @effects constructs a CampusData object for the map described by pathsFile
+     *     and buildingsFile, with no building categories
+     */
+    public CampusData(String pathsFile, String buildingsFile) {
+        this(pathsFile, buildingsFile, null);
+    }
+    
+    /**
+     * 
+     * @param pathsFile text input file containing coordinate data
+     * @param buildingsFile text input file containing coordinates of buildings
+     *     and abbreviated building names
+     * @param categoriesFile text input file with lines of the form shortName\tcategory,
+     *     a building may have several, or null. If the file does not exist no
+     *     buildings have categories.
+     * @effects constructs a CampusData object for the map described by pathsFile,
+     *     buildingsFile and categoriesFile
+     */
+    public CampusData(String pathsFile, String buildingsFile, String categoriesFile) {
         
         // Load graph with campus paths
-        distGraph = new DistGraph(CAMPUSPATHS);
+        paths = new VersionedGraph<Point<Double>,Double>(new DistGraph(pathsFile));
+        GraphVersion<Point<Double>,Double> loaded = paths.snapshot();
+        GraphIndex index = new GraphIndex(loaded);
+        
+        // Landmark distances are saved beside the paths file and
+        // only recomputed when the paths change.
+        LandmarkTable landmarks = LandmarkTable.loadOrCompute(pathsFile + LandmarkTable.SUFFIX,
+                index, LandmarkTable.DEFAULT_LANDMARKS);
+        tables = new RoutingTables(loaded, index, landmarks, routeCacheSize);
         
         shortToLong = new HashMap<String,String>();
         bToCoords = new HashMap<String,Point<Double>>();
         
         
         // Parse data for campus path  
-        List<String> lines = TxtInputParser.parse(CAMPUSBUILDINGS);
+        List<String> lines = TxtInputParser.parse(buildingsFile);
         
         for(String inputLine : lines) {
             
@@ -70,17 +158,43 @@ public class CampusData {
             
             
         }
+        
+        names = new BuildingIndex(shortToLong);
+        buildingList = new ArrayList<String>();
+        for(String shortName : shortToLong.keySet()) {
+            buildingList.add(shortName + ": " + shortToLong.get(shortName));
+        }
+        shortList = new ArrayList<String>(shortToLong.keySet());
+        
+        // Parse building categories, which are optional
+        categories = new HashMap<String,Set<String>>();
+        if(categoriesFile != null && new File(categoriesFile).exists()) {
+            for(String inputLine : TxtInputParser.parse(categoriesFile)) {
+                String[] tokens = inputLine.split("\t");
+                if(tokens.length < 2 || !bToCoords.containsKey(tokens[0])) {
+                    continue;
+                }
+                Set<String> kinds = categories.get(tokens[0]);
+                if(kinds == null) {
+                    kinds = new HashSet<String>();
+                    categories.put(tokens[0], kinds);
+                }
+                kinds.add(tokens[1].trim());
+            }
+        }
 
     }
     
     /**
      * Calculates edge distance, total cost of route.
+     * Where two points have several edges between them the shortest is used.
      * 
      * 
-     * @param shortName1 short name of building to start at
-     * @param shortNamen short name of building to end route at
+     * @param shortName1 short name of building to start at, full names and
+     * short names in any case are also accepted
+     * @param shortNamen short name of building to end route at, full names and
+     * short names in any case are also accepted
      * @modifies path
-     * @requires two points in distGraph to only have one edge between them
      * @return List of Points of the form
      * [(xi,yi),(distance (xi,yi)->(xi+1,yi+1),direction), ... (Total cost,null)] 
      * Where every other point contains information about the distance and direction
@@ -93,9 +207,57 @@ public class CampusData {
      * Ex. if shortName1 was not recognized but shortNamen was, would return a list 
      * of one point [ (null, 0.0) ]
      * 
+     * If there is no path between the buildings returns an empty list.
+     * 
      */
     public List<Point<Double>> getRoute(String shortName1, String shortNamen) {
         
+        long begin = System.nanoTime();
+        
+        // Accept full names or differently cased short names
+        String resolved = names.resolve(shortName1);
+        if(resolved != null) {
+            shortName1 = resolved;
+        }
+        resolved = names.resolve(shortNamen);
+        if(resolved != null) {
+            shortNamen = resolved;
+        }
+        
+        // The whole query runs on one version of the paths
+        RoutingTables current = currentTables();
+        Pair<String> key = new Pair<String>(shortName1, shortNamen);
+        List<Point<Double>> route = current.getCachedRoute(key);
+        boolean hit = route != null;
+        if(!hit) {
+            route = findRoute(current, shortName1, shortNamen);
+            // Only complete routes are cached
+            if(route.size() > 1) {
+                current.cacheRoute(key, route);
+            }
+        }
+        
+        RouteTraceRecorder traced = recorder;
+        if(traced != null) {
+            traced.record(shortName1, shortNamen, begin, System.nanoTime() - begin, hit);
+        }
+        
+        // Callers may modify the list, so never hand out the cached one
+        return new ArrayList<Point<Double>>(route);
+        
+    }
+    
+    /**
+     * Finds the route between two buildings without consulting the route cache.
+     * 
+     * @param current tables of the version of the paths to search
+     * @param shortName1 short name of building to start at
+     * @param shortNamen short name of building to end route at
+     * @return route in the form described by getRoute
+     */
+    private List<Point<Double>> findRoute(RoutingTables current, String shortName1,
+            String shortNamen) {
+        
         // Check for non-existent buildings 
         List<Point<Double>> pathFull = new ArrayList<Point<Double>>();
         if(!bToCoords.containsKey(shortName1)) {
@@ -113,19 +275,43 @@ public class CampusData {
         
         Point<Double> coords1 = this.bToCoords.get(shortName1);
         Point<Double> coordsn = this.bToCoords.get(shortNamen);
+        
+        GraphIndex index = current.getIndex();
+        
+        // Reject unconnected buildings without searching
+        int start = index.indexOf(coords1);
+        int dest = index.indexOf(coordsn);
+        if(start < 0 || dest < 0 || !current.getAnalysis().isReachable(start, dest)) {
+            return pathFull;
+        }
        
-        // Get node path from distGraph
-        List<Point<Double>> pathNodes = distGraph.findPath(coords1, coordsn);
+        // Get node path from the landmark guided search
+        int[] pathNodes = current.getSearch().findPath(start, dest);
+        if(pathNodes.length == 0) {
+            return pathFull;
+        }
+        return describe(index, pathNodes);
+        
+    }
+    
+    /**
+     * @param index index the path is on
+     * @param pathNodes numbers of the nodes along a path
+     * @requires pathNodes.length > 0
+     * @return the path in the form described by getRoute
+     */
+    private static List<Point<Double>> describe(GraphIndex index, int[] pathNodes) {
         
+        List<Point<Double>> pathFull = new ArrayList<Point<Double>>();
         int i = 0;
         Double totalCost = 0.0;
-        while(i < pathNodes.size() - 1) {
+        while(i < pathNodes.length - 1) {
             
-            coords1 = pathNodes.get(i);
-            Point<Double> coords2 = pathNodes.get(i+1);
+            Point<Double> coords1 = index.getNode(pathNodes[i]);
+            Point<Double> coords2 = index.getNode(pathNodes[i+1]);
             
             // Get distance
-            Double edgeVal = distGraph.getEdges(coords1, coords2).iterator().next();
+            Double edgeVal = index.weight(index.findEdge(pathNodes[i], pathNodes[i+1]));
             totalCost += edgeVal;
             
             // Get angle
@@ -133,21 +319,8 @@ public class CampusData {
             Double y = coords2.second() - coords1.second();
             Double angle = Math.atan2(y, x);
             
-            // Shift angle down by pi/2
-            //angle -= Math.PI/2;
-            
-            // Normalize angle
-            //while(angle <= -Math.PI/2) {
-            //    angle += 2*Math.PI;
-            //}
-            //while(angle > Math.PI/2) {
-            //    angle -= 2*Math.PI;
-            //}
-           
-            
-            //angle = Math.atan2(Math.sin(angle), Math.cos(angle));
-           
-            
+            // Angle is measured from east with y increasing down the map,
+            // see RouteDirections for conversion to compass headings.
             
             // Add in original coords and new data.
             pathFull.add(coords1);
@@ -156,12 +329,197 @@ public class CampusData {
             i = i + 1;
         }
         // Add total cost point 
-        pathFull.add(pathNodes.get(i));
+        pathFull.add(index.getNode(pathNodes[i]));
         pathFull.add(new Point<Double>(totalCost,null));
         return pathFull;
         
     }
     
+    /**
+     * Finds a short order to visit several buildings and the route through them
+     * in that order. The first building is always visited first, the rest in
+     * whatever order is found shortest within TourPlanner.DEFAULT_BUDGET_NANOS.
+     * 
+     * @param shortNames short names of the buildings to visit, the first being the start
+     * @param returnToStart whether the tour ends back at the first building
+     * @return route of the whole tour in the form described by getRoute, one segment
+     * after another with the total cost at the end. If any building is not recognized
+     * returns a list of one point [ (null, null) ]. If some building can not be reached
+     * from another, or shortNames is empty, returns an empty list.
+     */
+    public List<Point<Double>> getTour(List<String> shortNames, boolean returnToStart) {
+        
+        List<Point<Double>> pathFull = new ArrayList<Point<Double>>();
+        if(shortNames.isEmpty()) {
+            return pathFull;
+        }
+        
+        // The whole tour is planned on one version of the paths
+        GraphIndex index = currentTables().getIndex();
+        int[] stops = new int[shortNames.size()];
+        for(int i = 0; i < stops.length; i++) {
+            String shortName = shortNames.get(i);
+            String resolved = names.resolve(shortName);
+            if(resolved != null) {
+                shortName = resolved;
+            }
+            if(!bToCoords.containsKey(shortName)) {
+                pathFull.add(new Point<Double>());
+                return pathFull;
+            }
+            stops[i] = index.indexOf(bToCoords.get(shortName));
+            if(stops[i] < 0) {
+                return pathFull;
+            }
+        }
+        
+        TourPlanner planner = new TourPlanner(index, stops);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            planner.compute(pool);
+        } finally {
+            pool.shutdown();
+        }
+        int[] order = planner.plan(returnToStart, TourPlanner.DEFAULT_BUDGET_NANOS);
+        if(order == null) {
+            return pathFull;
+        }
+        return describe(index, planner.getPath(order, returnToStart));
+        
+    }
+    
+    /**
+     * Measures routes without caching or recording them, for tables of distances
+     * such as those between the portals of a CampusShard.
+     * 
+     * @param from short name of the building to measure from
+     * @param to short names of the buildings to measure to
+     * @return cost of the shortest route from from to each building of to, infinite
+     * where there is none or a building is unknown
+     */
+    double[] getDistancesFrom(String from, List<String> to) {
+        return measure(from, to, false);
+    }
+    
+    /**
+     * @param from short names of the buildings to measure from
+     * @param to short name of the building to measure to
+     * @return cost of the shortest route from each building of from to to, infinite
+     * where there is none or a building is unknown, see getDistancesFrom
+     */
+    double[] getDistancesTo(List<String> from, String to) {
+        return measure(to, from, true);
+    }
+    
+    /**
+     * @return distances from building to each of others, or from each of others to
+     * building if reverse, with one search
+     */
+    private double[] measure(String building, List<String> others, boolean reverse) {
+        double[] result = new double[others.size()];
+        Arrays.fill(result, Double.POSITIVE_INFINITY);
+        GraphIndex index = currentTables().getIndex();
+        int source = nodeOf(index, building);
+        if(source < 0) {
+            return result;
+        }
+        double[] dist = RouteSearch.distances(reverse ? index.reverse() : index, source);
+        for(int i = 0; i < result.length; i++) {
+            int node = nodeOf(index, others.get(i));
+            if(node >= 0) {
+                result[i] = dist[node];
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return number of the node of building in index, or -1 if it is unknown
+     */
+    private int nodeOf(GraphIndex index, String building) {
+        Point<Double> coords = bToCoords.get(building);
+        return coords == null ? -1 : index.indexOf(coords);
+    }
+    
+    /**
+     * Finds the closest buildings of a category by walking distance with one search
+     * from the start that stops as soon as enough of them have been reached.
+     * 
+     * @param shortName short name of building to start at, full names and
+     * short names in any case are also accepted
+     * @param category category to look for, ex. "library", in any case
+     * @param k most buildings to return
+     * @return up to k buildings of category closest to shortName, closest first,
+     * each with the route to it. The start itself is included at distance 0 if it
+     * is of category. Empty if shortName is not recognized, no building is of
+     * category, or none can be reached.
+     */
+    public List<Facility> getNearest(String shortName, String category, int k) {
+        
+        List<Facility> found = new ArrayList<Facility>();
+        String resolved = names.resolve(shortName);
+        if(resolved != null) {
+            shortName = resolved;
+        }
+        if(!bToCoords.containsKey(shortName)) {
+            return found;
+        }
+        
+        // The category index is rebuilt when the paths change
+        RoutingTables current = currentTables();
+        GraphIndex index = current.getIndex();
+        CategoryIndex byNode = categoryIndex;
+        if(byNode == null || byNode.getIndex() != index) {
+            byNode = new CategoryIndex(index, bToCoords, categories);
+            categoryIndex = byNode;
+        }
+        
+        int start = index.indexOf(bToCoords.get(shortName));
+        BitSet targets = byNode.getNodes(category);
+        if(start < 0 || targets == null) {
+            return found;
+        }
+        
+        // Each node holds at least one building, so k nodes are enough
+        for(int[] path : current.getSearch().findNearest(start, targets, k)) {
+            List<Point<Double>> route = describe(index, path);
+            for(String building : byNode.getBuildings(category, path[path.length - 1])) {
+                if(found.size() < k) {
+                    found.add(new Facility(building, route));
+                }
+            }
+        }
+        return found;
+        
+    }
+    
+    /**
+     * @return names of the building categories, in lower case and sorted
+     */
+    public Set<String> getCategories() {
+        Set<String> result = new TreeSet<String>();
+        for(Set<String> kinds : categories.values()) {
+            for(String kind : kinds) {
+                result.add(kind.toLowerCase());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Turn-by-turn directions between two buildings. Consecutive segments
+     * of the route heading the same way are merged into one Direction.
+     * 
+     * @param shortName1 short name of building to start at
+     * @param shortNamen short name of building to end route at
+     * @return Iterator over the Directions of the route from shortName1 to shortNamen,
+     * computed lazily as it is advanced. Has no Directions if either building
+     * is not recognized.
+     */
+    public Iterator<Direction> getDirections(String shortName1, String shortNamen) {
+        return new RouteDirections(getRoute(shortName1, shortNamen));
+    }
+    
     /**
      * 
      * @return a list of Strings where each String is like so:
@@ -170,11 +528,7 @@ public class CampusData {
      * of all the campus buildings.
      */
     public List<String> getBuildings() {
-        List<String> bList = new ArrayList<String>();
-        for(String shortName : shortToLong.keySet()) {
-            bList.add(shortName + ": " + shortToLong.get(shortName));
-        }
-        return bList;
+        return new ArrayList<String>(buildingList);
     }
     
     /**
@@ -184,10 +538,302 @@ public class CampusData {
      */
     public List<String> getShortBuildings() {
       
-        return new ArrayList<String>(shortToLong.keySet());
+        return new ArrayList<String>(shortList);
     
     }
     
+    /**
+     * 
+     * @param prefix start of a short name, full name or word of a full name
+     * @param limit most results to return
+     * @return short names of up to limit buildings with a name starting with prefix,
+     * ignoring case, best matches first
+     */
+    public List<String> findBuildings(String prefix, int limit) {
+        return names.prefix(prefix, limit);
+    }
+    
+    /**
+     * 
+     * @param query possibly misspelled building name or start of one
+     * @param limit most results to return
+     * @return short names of up to limit buildings whose names are close to query,
+     * ranked by the number of typos, see BuildingIndex.suggest
+     */
+    public List<String> suggestBuildings(String query, int limit) {
+        return names.suggest(query, limit);
+    }
+    
+    /**
+     * @return the checks and connectivity of the campus paths computed when they were loaded
+     */
+    public GraphAnalysis getAnalysis() {
+        return currentTables().getAnalysis();
+    }
+    
+    /**
+     * Estimates the heap used by the campus data, see FootprintReport.
+     * 
+     * @return report of the latest version of the paths, the tables queries are
+     * currently answered with, their route cache, and the building data
+     */
+    public FootprintReport getFootprint() {
+        
+        RoutingTables current = currentTables();
+        FootprintReport report = FootprintReport.forPaths(current.getPaths(), current);
+        
+        // Keys of bToCoords are the same Strings as those of shortToLong
+        long buildings = FootprintReport.stringMap(shortToLong)
+                + FootprintReport.hashMap(bToCoords.size()) + bToCoords.size() * FootprintReport.point()
+                + FootprintReport.arrayList(buildingList.size()) + FootprintReport.arrayList(shortList.size());
+        for(String building : buildingList) {
+            buildings += FootprintReport.string(building);
+        }
+        report.add("building maps", buildings);
+        report.add("building name index", names.footprint());
+        
+        long kinds = FootprintReport.hashMap(categories.size());
+        for(Set<String> set : categories.values()) {
+            kinds += FootprintReport.hashSet(set.size());
+            for(String kind : set) {
+                kinds += FootprintReport.string(kind);
+            }
+        }
+        CategoryIndex byNode = categoryIndex;
+        if(byNode != null) {
+            kinds += byNode.footprint();
+        }
+        report.add("building categories", kinds);
+        return report;
+        
+    }
+
+    /**
+     * @return array index of the current version of the campus paths
+     */
+    public GraphIndex getIndex() {
+        return currentTables().getIndex();
+    }
+
+    /**
+     * Counts how many shortest routes between pairs of buildings use each walkway,
+     * searching from every building in parallel.
+     * 
+     * @return usage of the walkways of the current version of the paths
+     */
+    public PathUsage getPathUsage() {
+        PathUsage usage = new PathUsage(currentTables().getIndex(), bToCoords.values());
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            usage.compute(pool);
+        } finally {
+            pool.shutdown();
+        }
+        return usage;
+    }
+    
+    /**
+     * Queries already running keep using the version of the paths they started on.
+     * New queries keep using the latest tables already built, for an earlier
+     * version, until tables for the edited paths have been built in the background,
+     * or after a call to refresh. Searches on edited paths may be slower until
+     * landmarks for them have been computed too.
+     * 
+     * @return the campus paths, for editing
+     */
+    public VersionedGraph<Point<Double>,Double> getPaths() {
+        return paths;
+    }
+    
+    /**
+     * @modifies this
+     * @effects builds the tables for the latest version of the paths now, with
+     * landmarks, so that the following queries see every edit made so far at full
+     * speed. Blocks until they are built.
+     */
+    public void refresh() {
+        RoutingTables current = updateTables();
+        if(current.getSearch().getLandmarks() == null) {
+            publishLandmarks(current, LandmarkTable.compute(current.getIndex(),
+                    LandmarkTable.DEFAULT_LANDMARKS));
+        }
+    }
+    
+    /**
+     * Never waits for tables to be built, so edits do not stall queries.
+     * 
+     * @modifies this
+     * @return the latest tables built, starting to build tables for the latest
+     * version of the paths in the background if they have been edited since
+     */
+    private RoutingTables currentTables() {
+        RoutingTables current = tables;
+        if(current.getVersion() != paths.getVersion()) {
+            buildTables();
+        } else if(current.getSearch().getLandmarks() == null) {
+            buildLandmarks();
+        }
+        return current;
+    }
+    
+    /**
+     * @return a single thread executor whose daemon thread is called name
+     */
+    private static ExecutorService builder(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread builder = new Thread(r, name);
+                builder.setDaemon(true);
+                return builder;
+            }
+        });
+    }
+    
+    /**
+     * @modifies this
+     * @effects builds tables for the latest version of the paths on TABLE_BUILDER,
+     * unless they are being built already or failed for this version
+     */
+    private void buildTables() {
+        if(paths.getVersion() == failedVersion || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        TABLE_BUILDER.execute(new Runnable() {
+            public void run() {
+                try {
+                    updateTables();
+                } catch(RuntimeException e) {
+                    // Queries stay correct on the tables before, so keep them
+                    // until the next edit rather than retrying every query
+                    failedVersion = paths.getVersion();
+                } finally {
+                    rebuilding.set(false);
+                }
+                // The paths may have been edited again meanwhile
+                if(tables.getVersion() != paths.getVersion()) {
+                    buildTables();
+                } else if(tables.getSearch().getLandmarks() == null) {
+                    buildLandmarks();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Tables for an edited version update the index of the tables before, reading
+     * only the nodes whose blocks the edits changed. The landmarks carry over when
+     * the edits only removed or lengthened edges, otherwise they have to be computed
+     * again and searches run without them until then.
+     * 
+     * @modifies this
+     * @return tables for the latest version of the paths, published unless newer
+     * ones have been meanwhile
+     */
+    private RoutingTables updateTables() {
+        RoutingTables current = tables;
+        GraphVersion<Point<Double>,Double> latest = paths.snapshot();
+        if(current.getVersion() == latest.getVersion()) {
+            return current;
+        }
+        GraphIndex index = current.getIndex().update(current.getPaths(), latest);
+        LandmarkTable landmarks = current.getSearch().getLandmarks();
+        if(landmarks != null) {
+            landmarks = landmarks.carryOver(current.getIndex(), index);
+        }
+        RoutingTables built = new RoutingTables(latest, index, landmarks, routeCacheSize);
+        synchronized(this) {
+            if(built.getVersion() > tables.getVersion()) {
+                // The cache may have been resized while building
+                if(built.getRouteCacheSize() != routeCacheSize) {
+                    built = built.withRouteCacheSize(routeCacheSize);
+                }
+                tables = built;
+            }
+        }
+        return built;
+    }
+    
+    /**
+     * @modifies this
+     * @effects computes landmarks for the tables on LANDMARK_BUILDER, unless they
+     * are being computed already or failed for this version of the paths
+     */
+    private void buildLandmarks() {
+        final RoutingTables target = tables;
+        if(target.getSearch().getLandmarks() != null || target.getVersion() == failedLandmarks
+                || !measuring.compareAndSet(false, true)) {
+            return;
+        }
+        LANDMARK_BUILDER.execute(new Runnable() {
+            public void run() {
+                try {
+                    publishLandmarks(target, LandmarkTable.compute(target.getIndex(),
+                            LandmarkTable.DEFAULT_LANDMARKS));
+                } catch(RuntimeException e) {
+                    // Searches stay correct without landmarks, so keep them
+                    // off until the next edit rather than retrying every query
+                    failedLandmarks = target.getVersion();
+                } finally {
+                    measuring.set(false);
+                }
+                // New tables may have been published meanwhile
+                if(tables.getSearch().getLandmarks() == null) {
+                    buildLandmarks();
+                }
+            }
+        });
+    }
+    
+    /**
+     * @param built tables landmarks were computed for
+     * @param landmarks landmark table for the index of built
+     * @modifies this
+     * @effects adds landmarks to the tables if they have none, carrying them
+     * over if the tables have been replaced since built and that is possible.
+     * Landmarks of an edited version are not saved, since they no longer match
+     * the paths file.
+     */
+    private synchronized void publishLandmarks(RoutingTables built, LandmarkTable landmarks) {
+        RoutingTables current = tables;
+        if(current != built) {
+            landmarks = landmarks.carryOver(built.getIndex(), current.getIndex());
+        }
+        if(landmarks != null && current.getSearch().getLandmarks() == null) {
+            tables = current.withLandmarks(landmarks);
+        }
+    }
+    
+    /**
+     * @param size most routes getRoute keeps cached, or 0 to cache none, as it
+     * does until this is first called. RoutingTables.ROUTE_CACHE_SIZE is a good
+     * size to turn the cache on with.
+     * @requires size >= 0
+     * @modifies this
+     * @effects sets the size of the route cache, emptying it if it changed
+     */
+    public synchronized void setRouteCacheSize(int size) {
+        routeCacheSize = size;
+        if(tables.getRouteCacheSize() != size) {
+            tables = tables.withRouteCacheSize(size);
+        }
+    }
+    
+    /**
+     * @return most routes getRoute keeps cached, 0 if it caches none
+     */
+    public int getRouteCacheSize() {
+        return routeCacheSize;
+    }
+    
+    /**
+     * @param recorder recorder to log every route query to, or null to stop recording
+     * @modifies this
+     * @effects every following call to getRoute is recorded in recorder
+     */
+    public void setRecorder(RouteTraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
     /**
      * @return the long name of the building
      * @param shortName abbreviated name of building
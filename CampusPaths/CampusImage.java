@@ -4,21 +4,118 @@ import java.awt.image.BufferedImage;
 
 import javax.swing.*;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import Point;
 
-/** A component that displays a map of UW campus. */
+/**
+ * A component that displays a map of UW campus. The map is first decoded at a
+ * reduced resolution close to the size it will be shown at, which is quick, and
+ * swapped for the full resolution map once that has decoded in the background.
+ */
 public class CampusImage extends JPanel {
 
-    private final BufferedImage campusImage;
+    // Image file of the campus map
+    public static final String CAMPUSMAP = "src/hw8/data/campus_map.jpg";
+    
+    // Map image shown, reduced until the full resolution image has loaded
+    private volatile BufferedImage campusImage;
+    
+    // Size of the full resolution image, which route coordinates are relative to
+    private final int sourceWidth, sourceHeight;
+    
+    private final String file;
     private List<Point<Double>> points;
     
+    // Walkways to draw as a heatmap and the number of routes using each
+    private Map<Pair<Point<Double>>,Double> heatmap;
+    
+    // Run once the map has been painted for the first time, or null
+    private Runnable firstPaint;
+    
     public CampusImage() throws IOException {
+        this(CAMPUSMAP, new Dimension(1024,768));
+    }
+    
+    /**
+     * @param file image file of the map
+     * @param size size the map will first be shown at
+     * @effects constructs a map showing file, decoded at the largest fraction
+     * 1/n of its full resolution that still covers size
+     * @throws IOException if file can not be read
+     */
+    public CampusImage(String file, Dimension size) throws IOException {
         
-        this.campusImage = ImageIO.read(new File("src/hw8/data/campus_map.jpg"));
+        this.file = file;
         points = new ArrayList<Point<Double>>();
+        heatmap = new HashMap<Pair<Point<Double>>,Double>();
+        
+        ImageInputStream in = ImageIO.createImageInputStream(new File(file));
+        if(in == null) {
+            throw new IOException("Can not read " + file + ".");
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if(!readers.hasNext()) {
+                throw new IOException("No decoder for " + file + ".");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // Only the header is read to find the size
+                sourceWidth = reader.getWidth(0);
+                sourceHeight = reader.getHeight(0);
+                int step = Math.max(1, Math.min(sourceWidth / Math.max(1, size.width),
+                        sourceHeight / Math.max(1, size.height)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                campusImage = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * @modifies this
+     * @effects decodes the full resolution map in a background thread and shows
+     * it once decoded. Does nothing if the map is already at full resolution.
+     */
+    public void loadFullResolution() {
+        
+        if(campusImage.getWidth() >= sourceWidth) {
+            return;
+        }
+        Thread loader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final BufferedImage full = ImageIO.read(new File(file));
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            campusImage = full;
+                            repaint();
+                        }
+                    });
+                } catch(IOException e) {
+                    // Keep showing the reduced map
+                }
+            }
+        }, "CampusImage loader");
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+        
     }
     
     @Override
@@ -26,9 +123,13 @@ public class CampusImage extends JPanel {
         super.paintComponent(g); // paint background
         
         // Draw the image to fill up the whole available space.
-        g.drawImage(campusImage, 0, 0, getParent().getWidth(), getParent().getHeight(),
-                0, 0, campusImage.getWidth(null), campusImage.getHeight(null), null);
+        BufferedImage image = campusImage;
+        g.drawImage(image, 0, 0, getParent().getWidth(), getParent().getHeight(),
+                0, 0, image.getWidth(null), image.getHeight(null), null);
         
+        if(!heatmap.isEmpty()) {
+            paintHeatmap((Graphics2D)g);
+        }
         
         if(!points.isEmpty()) {
             Point<Double> point;
@@ -67,9 +168,25 @@ public class CampusImage extends JPanel {
             g2d.fillOval(destx - 5, desty -5, 12, 12);
             
         }
+        
+        if(firstPaint != null) {
+            Runnable action = firstPaint;
+            firstPaint = null;
+            action.run();
+        }
  
     }
     
+    /**
+     * @param action action to run on the event dispatch thread once the map
+     * has been painted for the first time
+     * @modifies this
+     * @requires called on the event dispatch thread, or before the map is shown
+     */
+    public void whenFirstPainted(Runnable action) {
+        firstPaint = action;
+    }
+    
     /**
      * @param point Point to be drawn on the map
      * @modifies this
@@ -81,6 +198,59 @@ public class CampusImage extends JPanel {
         
     }
     
+    /**
+     * @param usage map from walkways, as pairs of end points, to the number of
+     * routes using them, ex. from PathUsage.getWalkwayUsage
+     * @modifies this
+     * @effects the walkways in usage are drawn over the map, colored from yellow
+     * for the least used to red for the most used
+     */
+    public void setHeatmap(Map<Pair<Point<Double>>,Double> usage) {
+        
+        heatmap = new HashMap<Pair<Point<Double>>,Double>(usage);
+        
+    }
+    
+    /**
+     * Clears the heatmap from the map
+     * @modifies this
+     */
+    public void clearHeatmap() {
+        
+        heatmap.clear();
+        
+    }
+    
+    /**
+     * Draws every walkway in the heatmap, busiest last so they are on top.
+     * @param g2d graphics to draw with
+     */
+    private void paintHeatmap(Graphics2D g2d) {
+        
+        List<Map.Entry<Pair<Point<Double>>,Double>> walkways =
+                new ArrayList<Map.Entry<Pair<Point<Double>>,Double>>(heatmap.entrySet());
+        Collections.sort(walkways, new Comparator<Map.Entry<Pair<Point<Double>>,Double>>() {
+            public int compare(Map.Entry<Pair<Point<Double>>,Double> e1,
+                    Map.Entry<Pair<Point<Double>>,Double> e2) {
+                return Double.compare(e1.getValue(), e2.getValue());
+            }
+        });
+        double max = walkways.get(walkways.size()-1).getValue();
+        
+        for(Map.Entry<Pair<Point<Double>>,Double> walkway : walkways) {
+            double share = max > 0 ? walkway.getValue() / max : 0.0;
+            g2d.setStroke(new BasicStroke((float)(2 + 6 * share)));
+            g2d.setColor(new Color(255, (int)(220 * (1 - share)), 0, 170));
+            
+            Point<Double> from = walkway.getKey().first();
+            Point<Double> to = walkway.getKey().second();
+            Line2D line = new Line2D.Double(scaleX(from.first()), scaleY(from.second()),
+                    scaleX(to.first()), scaleY(to.second()));
+            g2d.draw(line);
+        }
+        
+    }
+    
     /**
      * Clears all points from the map
      * @modifies this
@@ -98,7 +268,7 @@ public class CampusImage extends JPanel {
      */
     private Double scaleX(Double original) {
 
-        return original * this.getParent().getWidth() / campusImage.getWidth(null);
+        return original * this.getParent().getWidth() / sourceWidth;
         
     }
 
@@ -109,7 +279,7 @@ public class CampusImage extends JPanel {
      */
     private Double scaleY(Double original) {
 
-        return original * this.getParent().getHeight() / campusImage.getHeight(null);
+        return original * this.getParent().getHeight() / sourceHeight;
 
     }
 }
@@ -2,6 +2,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.swing.*;
 
@@ -18,11 +21,38 @@ public class CampusPathsGUI {
      */
     public static void main(String[] args) throws IOException {
         
+        final StartupTimer timer = new StartupTimer();
+        
         // Define initial app dimensions
         Dimension appSize = new Dimension(1024,768); 
         
-        // Load in data
-        final CampusData data = new CampusData();
+        // Load in data in the background while the map image decodes
+        FutureTask<CampusData> loading = new FutureTask<CampusData>(new Callable<CampusData>() {
+            public CampusData call() {
+                CampusData loaded = new CampusData();
+                timer.mark("data loaded");
+                return loaded;
+            }
+        });
+        Thread loader = new Thread(loading, "CampusData loader");
+        loader.setDaemon(true);
+        loader.start();
+        
+        // Decode the map at about the window size first, full resolution comes later
+        final CampusImage map = new CampusImage(CampusImage.CAMPUSMAP, appSize);
+        timer.mark("map decoded");
+        
+        final CampusData data;
+        try {
+            data = loading.get();
+        } catch(InterruptedException e) {
+            throw new IOException("Interrupted while loading campus data.", e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IOException("Failed to load campus data.", e.getCause());
+        }
 
         // Create initial frame
         final JFrame frame = new JFrame("Campus Paths (TM)");
@@ -77,7 +107,6 @@ public class CampusPathsGUI {
         destWrapper.add(destCombo);
 
         // Add map into wrapper
-        final CampusImage map = new CampusImage();
         map.setBackground(Color.white); 
         wrapper.add(map);
         map.setBounds(0,0,appSize.width,appSize.height);
@@ -172,6 +201,20 @@ public class CampusPathsGUI {
         // Set actionListener of Clear button to ClearButtonListener
         clearButton.addActionListener(new ClearButtonListener());
         
+        // Startup ends when the map is first on screen
+        map.whenFirstPainted(new Runnable() {
+            public void run() {
+                timer.mark("map painted");
+                // Report and decode the full map once the paint has finished
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        timer.finish();
+                        map.loadFullResolution();
+                    }
+                });
+            }
+        });
+        
         // Set frame to be visible
         frame.setVisible(true);
     
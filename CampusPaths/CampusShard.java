@@ -0,0 +1,289 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * One map in a set of campus maps. The CampusData for the map is only
+ * loaded the first time it is needed, and can be unloaded or reloaded
+ * from its files at any time. The distances between the portals of the map
+ * are saved beside its paths file, so routes can be planned across maps
+ * without loading the maps they pass by.
+ *
+ */
+public class CampusShard {
+
+    // Representation:
+    // A shard is a name, the data files of its map, and the set of buildings
+    // on the map that connect to buildings on other maps (portals).
+
+    // Abstraction function:
+    // data is the loaded map, or null if the map is not loaded. distances maps
+    // each ordered pair of portals (p1,p2) to the cost of the shortest route
+    // from p1 to p2 on this map, or is null if it has not been read or computed
+    // since the portals or the map files last changed. Reachable pairs only are
+    // present.
+
+    // Suffix added to the name of the paths file to name the saved portal distances
+    public static final String SUFFIX = ".portals";
+
+    private static final int MAGIC = 0x43505054;
+    private static final int VERSION = 1;
+
+    private final String name;
+    private final String pathsFile;
+    private final String buildingsFile;
+    private final Set<String> portals;
+    private volatile CampusData data;
+    private volatile Map<Pair<String>,Double> distances;
+
+    /**
+     * @param name name of the shard
+     * @param pathsFile text input file containing coordinate data of the map
+     * @param buildingsFile text input file containing buildings of the map
+     * @effects Constructs a new unloaded shard with no portals
+     */
+    public CampusShard(String name, String pathsFile, String buildingsFile) {
+        this.name = name;
+        this.pathsFile = pathsFile;
+        this.buildingsFile = buildingsFile;
+        this.portals = new HashSet<String>();
+        this.data = null;
+        this.distances = null;
+    }
+
+    /**
+     * @return name of the shard
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the data of the map, loading it from its files if it is
+     *     not already loaded
+     */
+    public CampusData getData() {
+        CampusData current = data;
+        if(current == null) {
+            synchronized(this) {
+                if(data == null) {
+                    data = new CampusData(pathsFile, buildingsFile);
+                }
+                current = data;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return true iff the data of the map is currently loaded
+     */
+    public boolean isLoaded() {
+        return data != null;
+    }
+
+    /**
+     * Reloads the map from its files. Queries already running keep
+     * using the data they started with.
+     * @modifies this
+     * @effects replaces the loaded data with data freshly read from the map files
+     *     and reads the portal distances again, in case the files changed
+     */
+    public void reload() {
+        // Build the new data outside the lock so queries are not stalled by it
+        CampusData fresh = new CampusData(pathsFile, buildingsFile);
+        synchronized(this) {
+            data = fresh;
+            distances = null;
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects unloads the map data so it can be garbage collected.
+     *     It will be loaded again the next time it is needed. The portal
+     *     distances are kept.
+     */
+    public synchronized void unload() {
+        data = null;
+    }
+
+    /**
+     * @param building short name of a building on this map
+     * @modifies this
+     * @effects marks building as a portal to another map
+     */
+    public synchronized void addPortal(String building) {
+        if(portals.add(building)) {
+            distances = null;
+        }
+    }
+
+    /**
+     * @return set of short names of the portals of this map
+     */
+    public synchronized Set<String> getPortals() {
+        return new HashSet<String>(portals);
+    }
+
+    /**
+     * Reads the distances saved beside the paths file if they are for the current
+     * portals and map files. Otherwise they are computed, loading the map just
+     * for that if it is not loaded, and saved. Failing to save is ignored.
+     *
+     * @return map from each ordered pair of portals (p1,p2) to the cost of
+     *     the shortest route from p1 to p2. Pairs with no route between them
+     *     are left out.
+     */
+    public Map<Pair<String>,Double> getPortalDistances() {
+        Map<Pair<String>,Double> current = distances;
+        if(current == null) {
+            synchronized(this) {
+                if(distances == null) {
+                    List<String> buildings = new ArrayList<String>(portals);
+                    Collections.sort(buildings);
+                    String file = pathsFile + SUFFIX;
+                    distances = load(file, buildings);
+                    if(distances == null) {
+                        // A map loaded only to measure it is not kept
+                        CampusData measured = data != null ? data
+                                : new CampusData(pathsFile, buildingsFile);
+                        double[][] costs = new double[buildings.size()][];
+                        for(int i = 0; i < costs.length; i++) {
+                            costs[i] = measured.getDistancesFrom(buildings.get(i), buildings);
+                        }
+                        distances = toMap(buildings, costs);
+                        try {
+                            save(file, buildings, costs);
+                        } catch(IOException e) {
+                            // The distances are only a cache, they are computed again next time
+                        }
+                    }
+                }
+                current = distances;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param buildings short names of buildings
+     * @param costs costs[i][j] is the cost of the route from building i to building j
+     * @return map from each ordered pair of different buildings with a route
+     *     between them to its cost
+     */
+    private static Map<Pair<String>,Double> toMap(List<String> buildings, double[][] costs) {
+        Map<Pair<String>,Double> result = new HashMap<Pair<String>,Double>();
+        for(int i = 0; i < costs.length; i++) {
+            for(int j = 0; j < costs.length; j++) {
+                if(i != j && costs[i][j] != Double.POSITIVE_INFINITY) {
+                    result.put(new Pair<String>(buildings.get(i), buildings.get(j)), costs[i][j]);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @param file file to save the distances to
+     * @param buildings short names of the portals, sorted
+     * @param costs costs[i][j] is the cost of the route from portal i to portal j
+     * @effects writes the distances to file, with the sizes and modification
+     *     times of the map files they were computed from
+     * @throws IOException if the file can not be written
+     */
+    private void save(String file, List<String> buildings, double[][] costs) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeStamp(out);
+            out.writeInt(buildings.size());
+            for(String building : buildings) {
+                out.writeUTF(building);
+            }
+            for(double[] row : costs) {
+                for(double cost : row) {
+                    out.writeDouble(cost);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param file file distances were saved to
+     * @param buildings short names of the portals, sorted
+     * @return the distances saved in file, or null if there are none, they can not
+     *     be read, or they were computed for other portals or other map files
+     */
+    private Map<Pair<String>,Double> load(String file, List<String> buildings) {
+        if(!new File(file).isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if(in.readInt() != MAGIC || in.readInt() != VERSION || !readStamp(in)
+                        || in.readInt() != buildings.size()) {
+                    return null;
+                }
+                for(String building : buildings) {
+                    if(!in.readUTF().equals(building)) {
+                        return null;
+                    }
+                }
+                double[][] costs = new double[buildings.size()][buildings.size()];
+                for(double[] row : costs) {
+                    for(int j = 0; j < row.length; j++) {
+                        row[j] = in.readDouble();
+                    }
+                }
+                return toMap(buildings, costs);
+            } finally {
+                in.close();
+            }
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @effects writes the sizes and modification times of the map files
+     */
+    private void writeStamp(DataOutputStream out) throws IOException {
+        for(String file : new String[] {pathsFile, buildingsFile}) {
+            out.writeLong(new File(file).length());
+            out.writeLong(new File(file).lastModified());
+        }
+    }
+
+    /**
+     * @return true iff the sizes and modification times read match the map files
+     */
+    private boolean readStamp(DataInputStream in) throws IOException {
+        boolean matches = true;
+        for(String file : new String[] {pathsFile, buildingsFile}) {
+            matches = in.readLong() == new File(file).length() && matches;
+            matches = in.readLong() == new File(file).lastModified() && matches;
+        }
+        return matches;
+    }
+
+}
@@ -0,0 +1,331 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * A set of campus maps that routes within and between the maps.
+ * Each map is a CampusShard that is loaded the first time a route touches it.
+ * Maps are joined by portals, pairs of buildings on two maps with a known
+ * cost of travelling between them. Routes between maps are planned over the
+ * portals using the portal-to-portal distances each map saves beside its files,
+ * see precompute, so only the maps on the chosen route are loaded.
+ *
+ */
+public class CampusShards {
+
+    // Representation:
+    // shards maps shard names to shards. links maps each pair of portals
+    // (shard1/building1, shard2/building2) to the cost of crossing from the
+    // first to the second. Portal names are qualified with their shard name.
+
+    // Abstraction function:
+    // The campus is the union of the maps of all the shards in shards, with an
+    // extra connection of cost links.get(p) for every portal pair p in links.
+
+    // Separates the shard name from the building name in a qualified name
+    private static final String SEPARATOR = "/";
+
+    private final Map<String,CampusShard> shards;
+    private final Map<Pair<String>,Double> links;
+
+    /**
+     * @effects Constructs a new set of maps with no shards
+     */
+    public CampusShards() {
+        shards = new ConcurrentHashMap<String,CampusShard>();
+        links = new ConcurrentHashMap<Pair<String>,Double>();
+    }
+
+    /**
+     * @param shardsFile text input file where each line is of the form
+     *     name\tpathsFile\tbuildingsFile
+     * @param portalsFile text input file where each line is of the form
+     *     shard1\tbuilding1\tshard2\tbuilding2\tcost
+     * @effects Constructs a new set of maps with the shards and portals in the files.
+     *     No map is loaded until it is needed.
+     */
+    public CampusShards(String shardsFile, String portalsFile) {
+        this();
+        for(String inputLine : TxtInputParser.parse(shardsFile)) {
+            String[] tokens = inputLine.split("\t");
+            addShard(tokens[0], tokens[1], tokens[2]);
+        }
+        for(String inputLine : TxtInputParser.parse(portalsFile)) {
+            String[] tokens = inputLine.split("\t");
+            addPortal(tokens[0], tokens[1], tokens[2], tokens[3], Double.parseDouble(tokens[4]));
+        }
+    }
+
+    /**
+     * @param name name of the new shard
+     * @param pathsFile text input file containing coordinate data of the map
+     * @param buildingsFile text input file containing buildings of the map
+     * @modifies this
+     * @effects adds an unloaded shard called name
+     * @throws IllegalArgumentException if there is already a shard called name
+     *     or name contains the separator "/"
+     */
+    public void addShard(String name, String pathsFile, String buildingsFile) {
+        if(name.contains(SEPARATOR)) {
+            throw new IllegalArgumentException("Shard name " + name + " may not contain "
+                    + SEPARATOR + ".");
+        }
+        if(shards.containsKey(name)) {
+            throw new IllegalArgumentException("There already exists a shard called " + name + ".");
+        }
+        shards.put(name, new CampusShard(name, pathsFile, buildingsFile));
+    }
+
+    /**
+     * @param shard1 name of the first shard
+     * @param building1 short name of building on shard1
+     * @param shard2 name of the second shard
+     * @param building2 short name of building on shard2
+     * @param cost cost of travelling between building1 and building2
+     * @modifies this
+     * @effects connects building1 and building2 in both directions with cost
+     * @throws IllegalArgumentException if shard1 or shard2 do not exist
+     */
+    public void addPortal(String shard1, String building1, String shard2, String building2,
+            double cost) {
+        getShard(shard1).addPortal(building1);
+        getShard(shard2).addPortal(building2);
+        String portal1 = qualify(shard1, building1);
+        String portal2 = qualify(shard2, building2);
+        links.put(new Pair<String>(portal1, portal2), cost);
+        links.put(new Pair<String>(portal2, portal1), cost);
+    }
+
+    /**
+     * @param name name of a shard
+     * @return the shard called name
+     * @throws IllegalArgumentException if there is no shard called name
+     */
+    public CampusShard getShard(String name) {
+        CampusShard shard = shards.get(name);
+        if(shard == null) {
+            throw new IllegalArgumentException("There does not exist a shard called " + name + ".");
+        }
+        return shard;
+    }
+
+    /**
+     * @return names of all the shards
+     */
+    public Set<String> getShardNames() {
+        return new HashSet<String>(shards.keySet());
+    }
+
+    /**
+     * @param name name of a shard
+     * @modifies this
+     * @effects reloads the map of shard name from its files, see CampusShard.reload
+     * @throws IllegalArgumentException if there is no shard called name
+     */
+    public void reload(String name) {
+        getShard(name).reload();
+    }
+
+    /**
+     * @param name name of a shard
+     * @modifies this
+     * @effects unloads the map of shard name until it is next needed
+     * @throws IllegalArgumentException if there is no shard called name
+     */
+    public void unload(String name) {
+        getShard(name).unload();
+    }
+
+    /**
+     * Computes and saves the portal distances of every map that has none saved
+     * for its current portals and files, loading each such map only while it is
+     * measured. Routes can then be planned without loading the maps they pass by.
+     */
+    public void precompute() {
+        for(CampusShard shard : shards.values()) {
+            shard.getPortalDistances();
+        }
+    }
+
+    /**
+     * Finds the shortest route between two buildings that may be on different maps.
+     *
+     * @param startShard name of the shard to start on
+     * @param start short name of building to start at
+     * @param destShard name of the shard to end on
+     * @param dest short name of building to end route at
+     * @return List of legs of the route in order. Each leg is a route on a single map
+     *     in the form returned by CampusData.getRoute, and consecutive legs are joined
+     *     by a portal. Costs of crossing portals are not included in the legs, see
+     *     getLinkCost. If both buildings are on the same shard there is one leg in the
+     *     form returned by getRoute, including its error forms. Returns an empty list
+     *     if there is no route between different shards.
+     * @throws IllegalArgumentException if startShard or destShard do not exist
+     */
+    public List<List<Point<Double>>> getRoute(String startShard, String start,
+            String destShard, String dest) {
+        CampusShard from = getShard(startShard);
+        CampusShard to = getShard(destShard);
+        List<List<Point<Double>>> legs = new ArrayList<List<Point<Double>>>();
+
+        if(startShard.equals(destShard)) {
+            legs.add(from.getData().getRoute(start, dest));
+            return legs;
+        }
+
+        List<String> waypoints = plan(from, start, to, dest);
+
+        // Consecutive waypoints on the same shard make a leg,
+        // waypoints on different shards are joined by a portal.
+        int i = 0;
+        while(i < waypoints.size() - 1) {
+            String shard1 = shardOf(waypoints.get(i));
+            String shard2 = shardOf(waypoints.get(i+1));
+            if(shard1.equals(shard2)) {
+                CampusData data = getShard(shard1).getData();
+                legs.add(data.getRoute(buildingOf(waypoints.get(i)), buildingOf(waypoints.get(i+1))));
+            }
+            i = i + 1;
+        }
+        return legs;
+    }
+
+    /**
+     * @param shard1 name of the first shard
+     * @param building1 short name of building on shard1
+     * @param shard2 name of the second shard
+     * @param building2 short name of building on shard2
+     * @return cost of crossing from building1 to building2, or null if they
+     *     are not joined by a portal
+     */
+    public Double getLinkCost(String shard1, String building1, String shard2, String building2) {
+        return links.get(new Pair<String>(qualify(shard1, building1), qualify(shard2, building2)));
+    }
+
+    /**
+     * Plans a route between shards over the portals, using the saved portal
+     * distances of each map, so no map is loaded except the first and last,
+     * where the distances from start and to dest are searched for. The searches
+     * are neither cached nor recorded as routes.
+     *
+     * @return qualified names of the buildings to route through in order, starting
+     *     with start and ending with dest, or an empty list if there is no route
+     */
+    private List<String> plan(CampusShard from, String start, CampusShard to, String dest) {
+        String source = qualify(from.getName(), start);
+        String target = qualify(to.getName(), dest);
+
+        // Edges from start to the portals of its map and from the portals of
+        // the destination map to dest are only needed for this query.
+        List<String> startPortals = new ArrayList<String>(from.getPortals());
+        double[] startCosts = from.getData().getDistancesFrom(start, startPortals);
+        Map<String,Double> fromStart = new HashMap<String,Double>();
+        for(int i = 0; i < startCosts.length; i++) {
+            if(startCosts[i] != Double.POSITIVE_INFINITY) {
+                fromStart.put(qualify(from.getName(), startPortals.get(i)), startCosts[i]);
+            }
+        }
+        List<String> destPortals = new ArrayList<String>(to.getPortals());
+        double[] destCosts = to.getData().getDistancesTo(destPortals, dest);
+        Map<String,Double> toDest = new HashMap<String,Double>();
+        for(int i = 0; i < destCosts.length; i++) {
+            if(destCosts[i] != Double.POSITIVE_INFINITY) {
+                toDest.put(qualify(to.getName(), destPortals.get(i)), destCosts[i]);
+            }
+        }
+
+        // Dijkstra over the portal graph, which is small enough to scan for the minimum
+        Map<String,Double> dist = new HashMap<String,Double>();
+        Map<String,String> prev = new HashMap<String,String>();
+        Set<String> settled = new HashSet<String>();
+        dist.put(source, 0.0);
+
+        while(true) {
+            String node = null;
+            for(Map.Entry<String,Double> entry : dist.entrySet()) {
+                if(!settled.contains(entry.getKey())
+                        && (node == null || entry.getValue() < dist.get(node))) {
+                    node = entry.getKey();
+                }
+            }
+            if(node == null || node.equals(target)) {
+                break;
+            }
+            settled.add(node);
+            double base = dist.get(node);
+
+            Map<String,Double> edges = new HashMap<String,Double>();
+            if(node.equals(source)) {
+                edges.putAll(fromStart);
+            } else {
+                // Portal to portal on the same map
+                String shardName = shardOf(node);
+                String building = buildingOf(node);
+                for(Map.Entry<Pair<String>,Double> entry
+                        : getShard(shardName).getPortalDistances().entrySet()) {
+                    if(entry.getKey().first().equals(building)) {
+                        edges.put(qualify(shardName, entry.getKey().second()), entry.getValue());
+                    }
+                }
+            }
+            // Across a portal to another map, start may itself be a portal
+            for(Map.Entry<Pair<String>,Double> entry : links.entrySet()) {
+                if(entry.getKey().first().equals(node)) {
+                    edges.put(entry.getKey().second(), entry.getValue());
+                }
+            }
+            if(toDest.containsKey(node)) {
+                edges.put(target, toDest.get(node));
+            }
+
+            for(Map.Entry<String,Double> edge : edges.entrySet()) {
+                String next = edge.getKey();
+                double cost = base + edge.getValue();
+                if(!settled.contains(next) && (!dist.containsKey(next) || cost < dist.get(next))) {
+                    dist.put(next, cost);
+                    prev.put(next, node);
+                }
+            }
+        }
+
+        List<String> waypoints = new ArrayList<String>();
+        if(!dist.containsKey(target)) {
+            return waypoints;
+        }
+        String node = target;
+        while(node != null) {
+            waypoints.add(node);
+            node = prev.get(node);
+        }
+        Collections.reverse(waypoints);
+        return waypoints;
+    }
+
+    /**
+     * @return name of building on shard qualified with the shard name
+     */
+    private static String qualify(String shard, String building) {
+        return shard + SEPARATOR + building;
+    }
+
+    /**
+     * @return shard name of a qualified building name
+     */
+    private static String shardOf(String qualified) {
+        return qualified.substring(0, qualified.indexOf(SEPARATOR));
+    }
+
+    /**
+     * @return short building name of a qualified building name
+     */
+    private static String buildingOf(String qualified) {
+        return qualified.substring(qualified.indexOf(SEPARATOR) + 1);
+    }
+
+}
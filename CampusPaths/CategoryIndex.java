@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ *
+ * The buildings of each category, such as library or dining, by node of a
+ * GraphIndex. Each category has a set of the nodes with a building of that
+ * category, so a search can check whether a node it settles is one it is
+ * looking for in constant time. Category names are not case sensitive.
+ *
+ */
+public class CategoryIndex {
+
+    // Representation:
+    // nodes maps each category, in lower case, to the set of node numbers of index
+    // with a building of that category. buildings maps the same categories to a map
+    // from those node numbers to the short names of the buildings there, sorted.
+
+    private final GraphIndex index;
+    private final Map<String,BitSet> nodes;
+    private final Map<String,Map<Integer,List<String>>> buildings;
+
+    /**
+     * @param index map the buildings are on
+     * @param coords map of short names of buildings to their coordinates
+     * @param categories map of short names of buildings to their categories
+     * @effects Constructs an index of the categories of the buildings in coords.
+     *     Buildings that are not nodes of index are left out.
+     */
+    public CategoryIndex(GraphIndex index, Map<String,Point<Double>> coords,
+            Map<String,Set<String>> categories) {
+        this.index = index;
+        this.nodes = new HashMap<String,BitSet>();
+        this.buildings = new HashMap<String,Map<Integer,List<String>>>();
+        for(Map.Entry<String,Set<String>> entry : categories.entrySet()) {
+            Point<Double> point = coords.get(entry.getKey());
+            int v = point == null ? -1 : index.indexOf(point);
+            if(v < 0) {
+                continue;
+            }
+            for(String category : entry.getValue()) {
+                String key = category.toLowerCase();
+                BitSet set = nodes.get(key);
+                if(set == null) {
+                    set = new BitSet(index.size());
+                    nodes.put(key, set);
+                    buildings.put(key, new HashMap<Integer,List<String>>());
+                }
+                set.set(v);
+                List<String> here = buildings.get(key).get(v);
+                if(here == null) {
+                    here = new ArrayList<String>();
+                    buildings.get(key).put(v, here);
+                }
+                here.add(entry.getKey());
+            }
+        }
+        for(Map<Integer,List<String>> byNode : buildings.values()) {
+            for(List<String> here : byNode.values()) {
+                Collections.sort(here);
+            }
+        }
+    }
+
+    /**
+     * @return the map the buildings are on
+     */
+    public GraphIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return names of the categories with at least one building, in lower case
+     */
+    public Set<String> getCategories() {
+        return new TreeSet<String>(nodes.keySet());
+    }
+
+    /**
+     * @param category name of a category
+     * @return numbers of the nodes with a building of category, or null if
+     *     there are none. The set must not be modified.
+     */
+    public BitSet getNodes(String category) {
+        return nodes.get(category.toLowerCase());
+    }
+
+    /**
+     * @return estimated heap used by this index beyond the building names,
+     *     see FootprintReport
+     */
+    long footprint() {
+        long size = FootprintReport.object(3 * FootprintReport.REFERENCE)
+                + FootprintReport.hashMap(nodes.size()) + FootprintReport.hashMap(buildings.size());
+        for(String category : nodes.keySet()) {
+            size += FootprintReport.string(category) + FootprintReport.bitSet(index.size());
+        }
+        for(Map<Integer,List<String>> byNode : buildings.values()) {
+            size += FootprintReport.hashMap(byNode.size());
+            for(Map.Entry<Integer,List<String>> entry : byNode.entrySet()) {
+                size += (entry.getKey() > 127 ? FootprintReport.INTEGER : 0)
+                        + FootprintReport.arrayList(entry.getValue().size());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param category name of a category
+     * @param v number of a node
+     * @return short names of the buildings of category at node v, sorted
+     */
+    public List<String> getBuildings(String category, int v) {
+        Map<Integer,List<String>> byNode = buildings.get(category.toLowerCase());
+        List<String> here = byNode == null ? null : byNode.get(v);
+        return here == null ? new ArrayList<String>() : new ArrayList<String>(here);
+    }
+
+}
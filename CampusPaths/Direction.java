@@ -0,0 +1,140 @@
+/**
+ *
+ * A single instruction in a set of walking directions. A Direction
+ * covers one or more consecutive route segments that head roughly the same way.
+ *
+ */
+public class Direction {
+
+    // Representation:
+    // A Direction is a leg of a route starting at start and ending at end,
+    // walked with a compass heading of heading degrees (clockwise from north)
+    // after performing turn at start.
+
+    // Abstraction function:
+    // turn is the instruction given before walking the leg, distance is the length
+    // of the leg, and totalDistance is the distance walked from the start of the route
+    // up to and including this leg. segments is the number of raw route segments
+    // merged into this leg.
+
+    private final String turn;
+    private final String compass;
+    private final double heading;
+    private final double distance;
+    private final double totalDistance;
+    private final int segments;
+    private final Point<Double> start, end;
+
+    /**
+     * @param turn turn instruction given at start, ex. "Turn left"
+     * @param heading compass heading of the leg in degrees clockwise from north
+     * @param distance length of the leg
+     * @param totalDistance cumulative distance from the start of the route to end
+     * @param segments number of route segments merged into this leg
+     * @param start coordinates the leg starts at
+     * @param end coordinates the leg ends at
+     * @requires 0 <= heading < 360, segments > 0
+     * @effects Constructs a new Direction
+     */
+    public Direction(String turn, double heading, double distance, double totalDistance,
+            int segments, Point<Double> start, Point<Double> end) {
+        this.turn = turn;
+        this.heading = heading;
+        this.compass = compassName(heading);
+        this.distance = distance;
+        this.totalDistance = totalDistance;
+        this.segments = segments;
+        this.start = start;
+        this.end = end;
+        checkRep();
+    }
+
+    /**
+     * @return turn instruction to perform before walking this leg
+     */
+    public String getTurn() {
+        return turn;
+    }
+
+    /**
+     * @return compass abbreviation of the heading, one of
+     * N, NE, E, SE, S, SW, W, NW
+     */
+    public String getCompass() {
+        return compass;
+    }
+
+    /**
+     * @return heading of the leg in degrees clockwise from north
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return length of the leg
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return distance from the start of the route to the end of this leg
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * @return number of raw route segments merged into this leg
+     */
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return coordinates the leg starts at
+     */
+    public Point<Double> getStart() {
+        return start;
+    }
+
+    /**
+     * @return coordinates the leg ends at
+     */
+    public Point<Double> getEnd() {
+        return end;
+    }
+
+    /**
+     * @param heading degrees clockwise from north
+     * @requires 0 <= heading < 360
+     * @return the nearest of the eight compass points to heading
+     */
+    public static String compassName(double heading) {
+        String[] names = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+        int i = (int)Math.round(heading / 45.0) % names.length;
+        return names[i];
+    }
+
+    /**
+     * @returns String representation of the Direction,
+     * ex. "Turn left and walk 120 feet NE (430 total)"
+     */
+    @Override
+    public String toString() {
+        return turn + " and walk " + Math.round(distance) + " feet " + compass
+                + " (" + Math.round(totalDistance) + " total)";
+    }
+
+    /**
+     * Checks the representation invariant
+     */
+    private void checkRep() {
+        assert(turn != null);
+        assert(heading >= 0 && heading < 360);
+        assert(segments > 0);
+        assert(start != null && end != null);
+    }
+
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * A building found by a nearest facility query, with the route to it.
+ *
+ */
+public class Facility {
+
+    // Representation:
+    // building is the short name of the building found, distance the length of
+    // the shortest route to it and route that route in the form returned by
+    // CampusData.getRoute.
+
+    private final String building;
+    private final double distance;
+    private final List<Point<Double>> route;
+
+    /**
+     * @param building short name of the building
+     * @param route route to the building in the form returned by CampusData.getRoute
+     * @requires route ends with the total cost point
+     * @effects Constructs a new Facility
+     */
+    public Facility(String building, List<Point<Double>> route) {
+        this.building = building;
+        this.route = new ArrayList<Point<Double>>(route);
+        this.distance = route.get(route.size() - 1).first();
+        checkRep();
+    }
+
+    /**
+     * @return short name of the building
+     */
+    public String getBuilding() {
+        return building;
+    }
+
+    /**
+     * @return length of the route to the building
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return route to the building in the form returned by CampusData.getRoute
+     */
+    public List<Point<Double>> getRoute() {
+        return new ArrayList<Point<Double>>(route);
+    }
+
+    /**
+     * @returns String representation of the Facility, ex. "ODE (420 feet)"
+     */
+    @Override
+    public String toString() {
+        return building + " (" + Math.round(distance) + " feet)";
+    }
+
+    /**
+     * Checks the representation invariant
+     */
+    private void checkRep() {
+        assert(building != null);
+        assert(distance >= 0);
+        assert(route.size() >= 2);
+    }
+
+}
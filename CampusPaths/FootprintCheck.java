@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ * Checks that the heap used per edge of a loaded map stays within a budget as
+ * maps grow. Builds synthetic street grids of increasing size the way CampusData
+ * loads a map, fills the route cache, and prints the FootprintReport of each
+ * next to the heap actually used. Exits with status 1, so it can fail a build,
+ * if the estimated or measured bytes per edge of any grid is over the budget, or
+ * if the two differ by more than MAX_MISMATCH, as the estimate can then no longer
+ * be trusted to say where the heap goes.
+ *
+ * Usage: FootprintCheck [bytesPerEdge], the budget defaults to DEFAULT_BUDGET.
+ *
+ */
+public class FootprintCheck {
+
+    // Bytes per edge allowed when no budget is given
+    public static final double DEFAULT_BUDGET = 400.0;
+
+    // Largest difference allowed between the estimated and measured bytes per
+    // edge, as a fraction of the measured
+    public static final double MAX_MISMATCH = 0.05;
+
+    // Nodes on a side of each grid checked
+    private static final int[] SIDES = {32, 64, 128, 256};
+
+    // Names the routes cached are keyed by, made once like the short names of
+    // the buildings of a loaded map
+    private static final String[] NAMES = new String[RoutingTables.ROUTE_CACHE_SIZE + 1];
+    static {
+        for(int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = "b" + i;
+        }
+    }
+
+    // Spacing of the grid in pixels, and how far nodes are moved off it
+    private static final double SPACING = 20.0;
+    private static final double JITTER = 5.0;
+
+    /**
+     * @param side nodes on a side
+     * @param seed seed of the random placement
+     * @return a grid of side x side nodes joined to their neighbours in both
+     *     directions, each edge its own Double like a loaded map
+     */
+    public static Graph<Point<Double>,Double> grid(int side, long seed) {
+        Random random = new Random(seed);
+        Graph<Point<Double>,Double> graph = new Graph<Point<Double>,Double>();
+        List<Point<Double>> nodes = new ArrayList<Point<Double>>();
+        for(int i = 0; i < side; i++) {
+            for(int j = 0; j < side; j++) {
+                Point<Double> node = new Point<Double>(i * SPACING + random.nextDouble() * JITTER,
+                        j * SPACING + random.nextDouble() * JITTER);
+                graph.addNode(node);
+                nodes.add(node);
+            }
+        }
+        for(int i = 0; i < side; i++) {
+            for(int j = 0; j < side; j++) {
+                Point<Double> node = nodes.get(i * side + j);
+                if(i + 1 < side) {
+                    join(graph, node, nodes.get((i + 1) * side + j));
+                }
+                if(j + 1 < side) {
+                    join(graph, node, nodes.get(i * side + j + 1));
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @modifies graph
+     * @effects adds edges both ways between p and q of their distance apart
+     */
+    private static void join(Graph<Point<Double>,Double> graph, Point<Double> p, Point<Double> q) {
+        double distance = Math.hypot(p.first() - q.first(), p.second() - q.second());
+        graph.addEdge(p, q, distance);
+        graph.addEdge(q, p, distance);
+    }
+
+    /**
+     * @modifies tables
+     * @effects fills the route cache of tables with routes between random nodes
+     */
+    private static void fillCache(RoutingTables tables, long seed) {
+        Random random = new Random(seed);
+        GraphIndex index = tables.getIndex();
+        for(int r = 0; r < RoutingTables.ROUTE_CACHE_SIZE; r++) {
+            int[] nodes = tables.getSearch().findPath(random.nextInt(index.size()),
+                    random.nextInt(index.size()));
+            List<Point<Double>> route = new ArrayList<Point<Double>>();
+            double total = 0.0;
+            for(int i = 0; i + 1 < nodes.length; i++) {
+                Point<Double> from = index.getNode(nodes[i]);
+                Point<Double> to = index.getNode(nodes[i + 1]);
+                double distance = index.weight(index.findEdge(nodes[i], nodes[i + 1]));
+                total += distance;
+                route.add(from);
+                route.add(new Point<Double>(distance,
+                        Math.atan2(to.second() - from.second(), to.first() - from.first())));
+            }
+            route.add(index.getNode(nodes[nodes.length - 1]));
+            route.add(new Point<Double>(total,null));
+            tables.cacheRoute(new Pair<String>(NAMES[r], NAMES[r + 1]), route);
+        }
+    }
+
+    /**
+     * @return tables of version, with landmarks, as CampusData builds them with
+     *     the route cache turned on at RoutingTables.ROUTE_CACHE_SIZE
+     */
+    private static RoutingTables tables(GraphVersion<Point<Double>,Double> version) {
+        GraphIndex index = new GraphIndex(version);
+        return new RoutingTables(version, index,
+                LandmarkTable.compute(index, LandmarkTable.DEFAULT_LANDMARKS),
+                RoutingTables.ROUTE_CACHE_SIZE);
+    }
+
+    /**
+     * @effects loads and initialises every class used in checking a grid, so
+     *     the first grid measured is not charged for their static state
+     */
+    private static void warmUp() {
+        Graph<Point<Double>,Double> graph = grid(SIDES[0], 0);
+        FootprintReport.graph(graph);
+        GraphVersion<Point<Double>,Double> version =
+                new VersionedGraph<Point<Double>,Double>(graph).snapshot();
+        RoutingTables tables = tables(version);
+        fillCache(tables, 0);
+        FootprintReport.forPaths(version, tables).toString();
+    }
+
+    /**
+     * @return bytes of heap in use after collecting garbage
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collection is only a request, take the lowest of a few
+        for(int i = 0; i < 4; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Checks the footprint of each grid against the budget in args[0].
+     */
+    public static void main(String[] args) {
+        double budget = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_BUDGET;
+        boolean over = false;
+        boolean mismatched = false;
+        warmUp();
+        System.out.println(String.format("%8s %8s %14s %14s %14s", "nodes", "edges",
+                "estimate/edge", "measured/edge", "Graph/edge"));
+        FootprintReport last = null;
+        for(int side : SIDES) {
+            long before = usedHeap();
+            Graph<Point<Double>,Double> graph = grid(side, side);
+            double graphPerEdge = FootprintReport.graph(graph);
+            VersionedGraph<Point<Double>,Double> paths = new VersionedGraph<Point<Double>,Double>(graph);
+            // Like CampusData, the loaded Graph is dropped once copied
+            graph = null;
+            GraphVersion<Point<Double>,Double> version = paths.snapshot();
+            RoutingTables tables = tables(version);
+            fillCache(tables, side);
+            long measured = usedHeap() - before;
+
+            FootprintReport report = FootprintReport.forPaths(version, tables);
+            GraphIndex index = tables.getIndex();
+            int edges = index.edgeCount();
+            double estimatePerEdge = report.getBytesPerEdge();
+            double measuredPerEdge = (measured - report.getBytes(FootprintReport.ROUTE_CACHE))
+                    / (double)edges;
+            boolean mismatch = Math.abs(measuredPerEdge - estimatePerEdge)
+                    > MAX_MISMATCH * measuredPerEdge;
+            System.out.println(String.format("%8d %8d %14.1f %14.1f %14.1f%s", index.size(), edges,
+                    estimatePerEdge, measuredPerEdge, graphPerEdge / edges,
+                    mismatch ? "  estimate off" : ""));
+            over = over || Math.max(estimatePerEdge, measuredPerEdge) > budget;
+            mismatched = mismatched || mismatch;
+            last = report;
+            // Keep everything reachable until measured
+            if(paths.getVersion() != tables.getVersion()) {
+                throw new IllegalStateException("Tables do not match the paths.");
+            }
+        }
+        System.out.println();
+        System.out.print(last);
+        if(over) {
+            System.out.println(String.format("Over budget of %.1f bytes per edge.", budget));
+        }
+        if(mismatched) {
+            System.out.println(String.format("Estimate differs from the heap measured by over %.0f%%.",
+                    MAX_MISMATCH * 100));
+        }
+        if(over || mismatched) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,448 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * Estimated heap used by each structure of a loaded map, in total and per node,
+ * per edge and per cached route. Sizes are worked out from the number of objects
+ * of each kind a structure holds, assuming a 64 bit JVM with compressed
+ * references: 12 byte object headers, 4 byte references and objects padded to
+ * a multiple of 8 bytes. Objects shared between structures, such as the node
+ * coordinates, are counted once under their own structure.
+ *
+ */
+public class FootprintReport {
+
+    // Representation:
+    // bytes maps the name of each structure, in the order added, to its
+    // estimated size. nodes, edges and routes are the counts the per item
+    // sizes are divided by.
+
+    public static final int HEADER = 12;
+    public static final int REFERENCE = 4;
+    public static final int ALIGNMENT = 8;
+
+    // Size of a boxed Double and of a boxed Integer
+    public static final long DOUBLE = object(8);
+    public static final long INTEGER = object(4);
+
+    // Size of a Pair or Point, not counting what it holds
+    public static final long PAIR = object(2 * REFERENCE);
+
+    // Size of the key set a HashMap keeps once it has been iterated by key,
+    // as the maps and sets of a graph are
+    public static final long KEY_SET = object(REFERENCE);
+
+    // Size of an entry of a HashMap, and of one in a bin HashMap has made a tree
+    // of, which it does to bins of at least TREEIFY_THRESHOLD entries once its
+    // table is at least MIN_TREEIFY_CAPACITY long
+    private static final long NODE = object(4 + 3 * REFERENCE);
+    private static final long LINKED_NODE = object(4 + 5 * REFERENCE);
+    private static final long TREE_NODE = object(4 + 9 * REFERENCE + 1);
+    private static final int TREEIFY_THRESHOLD = 8;
+    private static final int MIN_TREEIFY_CAPACITY = 64;
+
+    // Name of the structure the route cache is reported under
+    public static final String ROUTE_CACHE = "route cache";
+
+    private final Map<String,Long> bytes;
+    private final int nodes;
+    private final int edges;
+    private int routes;
+
+    /**
+     * @param nodes number of nodes of the map
+     * @param edges number of edges of the map
+     * @effects Constructs a report with no structures
+     */
+    public FootprintReport(int nodes, int edges) {
+        this.bytes = new LinkedHashMap<String,Long>();
+        this.nodes = nodes;
+        this.edges = edges;
+        this.routes = 0;
+    }
+
+    /**
+     * @param structure name of a structure
+     * @param size estimated size of it in bytes
+     * @modifies this
+     * @effects adds size to the size of structure
+     */
+    public void add(String structure, long size) {
+        Long previous = bytes.get(structure);
+        bytes.put(structure, (previous == null ? 0 : previous) + size);
+    }
+
+    /**
+     * @param routes number of routes in the route cache
+     * @modifies this
+     */
+    public void setRoutes(int routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * @return names of the structures in the order they were added
+     */
+    public List<String> getStructures() {
+        return new ArrayList<String>(bytes.keySet());
+    }
+
+    /**
+     * @return estimated size of structure in bytes, 0 if it was never added
+     */
+    public long getBytes(String structure) {
+        Long size = bytes.get(structure);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * @return estimated size of every structure together in bytes
+     */
+    public long getTotal() {
+        long total = 0;
+        for(long size : bytes.values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * @return estimated bytes per edge of the map of every structure together,
+     *     leaving out the route cache, whose size does not grow with the map
+     */
+    public double getBytesPerEdge() {
+        return (getTotal() - getBytes(ROUTE_CACHE)) / (double)Math.max(1, edges);
+    }
+
+    /**
+     * @return a table of the structures with their size in total, per node,
+     *     per edge, and per route for the route cache
+     */
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-32s %12s %10s %10s%n", "structure", "bytes", "per node", "per edge"));
+        for(Map.Entry<String,Long> entry : bytes.entrySet()) {
+            table.append(String.format("%-32s %12d %10.1f %10.1f", entry.getKey(), entry.getValue(),
+                    entry.getValue() / (double)Math.max(1, nodes),
+                    entry.getValue() / (double)Math.max(1, edges)));
+            if(entry.getKey().equals(ROUTE_CACHE) && routes > 0) {
+                table.append(String.format("  %.1f per route", entry.getValue() / (double)routes));
+            }
+            table.append(String.format("%n"));
+        }
+        table.append(String.format("%-32s %12d %10.1f %10.1f%n", "total", getTotal(),
+                getTotal() / (double)Math.max(1, nodes), getTotal() / (double)Math.max(1, edges)));
+        return table.toString();
+    }
+
+    /**
+     * Estimates the structures of one version of a map.
+     *
+     * @param paths version of the map
+     * @param tables routing tables built from paths
+     * @return report of the graph, its nodes and edge labels, the array index,
+     *     landmarks, analysis, search arrays of one thread and route cache
+     */
+    public static FootprintReport forPaths(GraphVersion<Point<Double>,Double> paths,
+            RoutingTables tables) {
+        GraphIndex index = tables.getIndex();
+        FootprintReport report = new FootprintReport(index.size(), index.edgeCount());
+        report.add("paths graph", version(paths));
+        report.add("node coordinates", paths.size() * point());
+        report.add("edge lengths", edgeLabels(paths) * DOUBLE);
+        report.add("array index", index(index));
+        LandmarkTable landmarks = tables.getSearch().getLandmarks();
+        if(landmarks != null) {
+            report.add("landmark table", landmarks(landmarks, index.size()));
+        }
+        report.add("analysis", analysis(tables.getAnalysis(), index.size()));
+        report.add("search arrays per thread", search(index.size()));
+        Map<Pair<String>,List<Point<Double>>> cached = tables.cachedRoutes();
+        report.add(ROUTE_CACHE, routeCache(cached));
+        report.setRoutes(cached.size());
+        return report;
+    }
+
+    /**
+     * @return estimated size of the maps and sets of a Graph with the nodes and
+     *     edges of graph, not counting the nodes and edge labels themselves
+     */
+    public static <N,E> long graph(ReadableGraph<N,E> graph) {
+        Set<N> nodes = graph.getNodes();
+        long size = hashMap(nodes) + KEY_SET;
+        int pairs = 0;
+        for(N node : nodes) {
+            Set<N> children = graph.getChildren(node);
+            size += hashSet(children.size()) + KEY_SET;
+            for(N child : children) {
+                size += PAIR + hashSet(graph.getEdges(node, child).size()) + KEY_SET;
+                pairs = pairs + 1;
+            }
+        }
+        return size + hashMap(pairs);
+    }
+
+    /**
+     * @return estimated size of the blocks, adjacencies and edge sets of version,
+     *     not counting the nodes and edge labels themselves
+     */
+    public static <N,E> long version(GraphVersion<N,E> version) {
+        Map<N,Map<N,Set<E>>>[] blocks = version.blocks();
+        long size = object(REFERENCE + 12) + array(blocks.length, REFERENCE);
+        for(Map<N,Map<N,Set<E>>> block : blocks) {
+            size += hashMap(block.keySet()) + KEY_SET;
+            for(Map<N,Set<E>> adjacency : block.values()) {
+                size += hashMap(adjacency.keySet()) + KEY_SET;
+                for(Set<E> labels : adjacency.values()) {
+                    size += hashSet(labels.size()) + KEY_SET;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of edge labels in version
+     */
+    private static <N,E> long edgeLabels(GraphVersion<N,E> version) {
+        long count = 0;
+        for(Map<N,Map<N,Set<E>>> block : version.blocks()) {
+            for(Map<N,Set<E>> adjacency : block.values()) {
+                for(Set<E> labels : adjacency.values()) {
+                    count += labels.size();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return estimated size of index, not counting the node coordinates
+     */
+    public static long index(GraphIndex index) {
+        int n = index.size();
+        int m = index.edgeCount();
+        List<Point<Double>> nodes = new ArrayList<Point<Double>>(n);
+        for(int i = 0; i < n; i++) {
+            nodes.add(index.getNode(i));
+        }
+        // Integers above 127 are not cached by Integer.valueOf
+        long boxes = Math.max(0, n - 128) * INTEGER;
+        return object(5 * REFERENCE) + array(n, REFERENCE) + hashMap(nodes) + boxes
+                + array(n + 1, 4) + array(m, 4) + array(m, 8);
+    }
+
+    /**
+     * @return estimated size of landmarks for a map of n nodes
+     */
+    public static long landmarks(LandmarkTable landmarks, int n) {
+        int k = landmarks.getLandmarks().length;
+        return object(3 * REFERENCE + 8) + array(k, 4) + 2 * array(k * n, 4);
+    }
+
+    /**
+     * @return estimated size of analysis of a map of n nodes
+     */
+    public static long analysis(GraphAnalysis analysis, int n) {
+        int count = analysis.getComponentCount();
+        long size = object(5 * REFERENCE + 8) + array(n, 4);
+        if(count <= GraphAnalysis.MAX_CLOSURE) {
+            size += array(count, REFERENCE) + count * bitSet(count);
+        }
+        size += arrayList(analysis.getDuplicates().size()) + analysis.getDuplicates().size() * PAIR;
+        size += arrayList(analysis.getZeroLengthEdges().size())
+                + analysis.getZeroLengthEdges().size() * PAIR;
+        size += arrayList(analysis.getAsymmetricEdges().size())
+                + analysis.getAsymmetricEdges().size() * PAIR;
+        return size;
+    }
+
+    /**
+     * @return estimated size of the search arrays of one thread on a map of n nodes,
+     *     with a heap at its starting size
+     */
+    public static long search(int n) {
+        return object(5 * REFERENCE + 8) + 2 * array(n, 8) + 2 * array(n, 4)
+                + object(2 * REFERENCE + 4) + array(16, 8) + array(16, 4);
+    }
+
+    /**
+     * @param routes route cache mapping pairs of building short names to routes
+     *     in the form returned by CampusData.getRoute
+     * @return estimated size of a route cache holding routes. Short names belong
+     *     to the buildings and route coordinates are nodes of the map, so neither
+     *     is counted, the key pairs and the distance and direction points are.
+     */
+    public static long routeCache(Map<Pair<String>,List<Point<Double>>> routes) {
+        long size = linkedHashMap(routes.keySet());
+        for(List<Point<Double>> route : routes.values()) {
+            size += PAIR + grownArrayList(route.size());
+            for(int i = 1; i < route.size(); i += 2) {
+                Point<Double> point = route.get(i);
+                size += PAIR + (point.first() == null ? 0 : DOUBLE) + (point.second() == null ? 0 : DOUBLE);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated size of map, counting the map, its String keys and its
+     *     values, which are Strings or Points of Doubles
+     */
+    public static long stringMap(Map<String,?> map) {
+        long size = hashMap(map.size());
+        for(Map.Entry<String,?> entry : map.entrySet()) {
+            size += string(entry.getKey());
+            if(entry.getValue() instanceof String) {
+                size += string((String)entry.getValue());
+            } else if(entry.getValue() instanceof Point<?>) {
+                size += point();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return size of an object with fieldBytes bytes of fields
+     */
+    public static long object(long fieldBytes) {
+        return align(HEADER + fieldBytes);
+    }
+
+    /**
+     * @return size of an array of length elements of elementBytes each
+     */
+    public static long array(long length, int elementBytes) {
+        return align(16 + length * elementBytes);
+    }
+
+    /**
+     * @return size of a Point holding two Doubles
+     */
+    public static long point() {
+        return PAIR + 2 * DOUBLE;
+    }
+
+    /**
+     * @return size of s, assuming compact strings
+     */
+    public static long string(String s) {
+        return object(REFERENCE + 4 + 2) + array(s.length(), 1);
+    }
+
+    /**
+     * @return size of a HashMap of size entries, not counting keys and values
+     */
+    public static long hashMap(int size) {
+        long table = size == 0 ? 0 : array(capacity(size), REFERENCE);
+        return object(4 * REFERENCE + 16) + table + size * NODE;
+    }
+
+    /**
+     * @return size of a HashMap holding keys, not counting keys and values. Keys
+     *     whose hashes collide in bins HashMap makes trees of are held in tree
+     *     nodes, larger than the entries counted by hashMap(int).
+     */
+    public static long hashMap(Collection<?> keys) {
+        return hashMap(keys.size()) + treeNodes(keys) * (TREE_NODE - NODE);
+    }
+
+    /**
+     * @return size of a LinkedHashMap of size entries, not counting keys and values
+     */
+    public static long linkedHashMap(int size) {
+        long table = size == 0 ? 0 : array(capacity(size), REFERENCE);
+        return object(6 * REFERENCE + 17) + table + size * LINKED_NODE;
+    }
+
+    /**
+     * @return size of a LinkedHashMap holding keys, not counting keys and values,
+     *     with tree nodes for colliding keys as hashMap(Collection) counts them
+     */
+    public static long linkedHashMap(Collection<?> keys) {
+        return linkedHashMap(keys.size()) + treeNodes(keys) * (TREE_NODE - LINKED_NODE);
+    }
+
+    /**
+     * @return size of a HashSet of size elements, not counting the elements
+     */
+    public static long hashSet(int size) {
+        return object(REFERENCE) + hashMap(size);
+    }
+
+    /**
+     * @return size of an ArrayList of size elements with no spare capacity,
+     *     not counting the elements
+     */
+    public static long arrayList(int size) {
+        return object(REFERENCE + 8) + array(size, REFERENCE);
+    }
+
+    /**
+     * @return size of an ArrayList of size elements grown from empty by adding
+     *     them one at a time, not counting the elements
+     */
+    public static long grownArrayList(int size) {
+        long capacity = 0;
+        while(capacity < size) {
+            // The first add makes room for 10, each one after that half as many again
+            capacity = capacity == 0 ? 10 : capacity + (capacity >> 1);
+        }
+        return object(REFERENCE + 8) + array(capacity, REFERENCE);
+    }
+
+    /**
+     * @return size of a BitSet of bits bits
+     */
+    public static long bitSet(int bits) {
+        return object(REFERENCE + 5) + array((bits + 63) / 64, 8);
+    }
+
+    /**
+     * @return number of keys a HashMap holding keys keeps in bins it has made
+     *     trees of
+     */
+    private static long treeNodes(Collection<?> keys) {
+        int capacity = (int)capacity(keys.size());
+        if(capacity < MIN_TREEIFY_CAPACITY) {
+            return 0;
+        }
+        int[] bins = new int[capacity];
+        for(Object key : keys) {
+            int hash = key == null ? 0 : key.hashCode();
+            bins[(hash ^ (hash >>> 16)) & (capacity - 1)]++;
+        }
+        long count = 0;
+        for(int bin : bins) {
+            if(bin >= TREEIFY_THRESHOLD) {
+                count += bin;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return length of the table of a HashMap holding size entries
+     */
+    private static long capacity(int size) {
+        long capacity = 16;
+        while(size > capacity * 3 / 4) {
+            capacity = capacity * 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * @return size rounded up to a multiple of ALIGNMENT
+     */
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+}
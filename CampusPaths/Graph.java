@@ -3,7 +3,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-public class Graph<N,E> {
+public class Graph<N,E> implements ReadableGraph<N,E> {
 
     // Representation:
     // A |V| x |V| matrix M in which an element M[u,v] is 
@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Checks a map for problems when it is loaded and precomputes which nodes can
+ * reach each other. Strongly connected components are found with an iterative
+ * version of Tarjan's algorithm so that large maps can not overflow the stack.
+ * Reachability between components is also precomputed when there are few enough
+ * of them, so a route between unconnected buildings is rejected without a search.
+ *
+ */
+public class GraphAnalysis {
+
+    // Representation:
+    // component[i] is the strongly connected component of node i of index.
+    // Components are numbered in reverse topological order, an edge between two
+    // components always goes from a higher number to a lower or equal one.
+    // reaches[c] holds the components reachable from component c, or reaches is
+    // null if there were more than MAX_CLOSURE components.
+
+    // Abstraction function:
+    // A node i can reach a node j iff component[i] == component[j], or
+    // reaches[component[i]] contains component[j].
+
+    // Most components for which reachability between components is precomputed
+    public static final int MAX_CLOSURE = 4096;
+
+    // Coordinates closer than this on both axes are reported as duplicates
+    public static final double DUPLICATE_TOLERANCE = 1e-6;
+
+    private final GraphIndex index;
+    private final int[] component;
+    private final int componentCount;
+    private final BitSet[] reaches;
+    private final List<Pair<Point<Double>>> duplicates;
+    private final List<Pair<Point<Double>>> zeroLength;
+    private final List<Pair<Point<Double>>> asymmetric;
+
+    /**
+     * @param index graph to analyse
+     * @effects Constructs an analysis of index
+     */
+    public GraphAnalysis(GraphIndex index) {
+        this.index = index;
+        this.component = new int[index.size()];
+        this.componentCount = findComponents();
+        this.reaches = componentCount <= MAX_CLOSURE ? closure() : null;
+        this.duplicates = new ArrayList<Pair<Point<Double>>>();
+        this.zeroLength = new ArrayList<Pair<Point<Double>>>();
+        this.asymmetric = new ArrayList<Pair<Point<Double>>>();
+        findDuplicates();
+        findBadEdges();
+    }
+
+    /**
+     * @param i number of a node
+     * @return number of the strongly connected component of node i
+     */
+    public int getComponent(int i) {
+        return component[i];
+    }
+
+    /**
+     * @return number of strongly connected components
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @param from number of a node
+     * @param to number of a node
+     * @return false if there is no path from node from to node to. If there are more
+     *     than MAX_CLOSURE components, may also return true for nodes in different
+     *     components with no path between them.
+     */
+    public boolean isReachable(int from, int to) {
+        if(component[from] == component[to]) {
+            return true;
+        }
+        // Edges only lead to lower numbered components
+        if(component[from] < component[to]) {
+            return false;
+        }
+        if(reaches == null) {
+            return true;
+        }
+        return reaches[component[from]].get(component[to]);
+    }
+
+    /**
+     * @return pairs of distinct nodes whose coordinates are within DUPLICATE_TOLERANCE
+     */
+    public List<Pair<Point<Double>>> getDuplicates() {
+        return new ArrayList<Pair<Point<Double>>>(duplicates);
+    }
+
+    /**
+     * @return edges, as (from,to) pairs, with length zero or from a node to itself
+     */
+    public List<Pair<Point<Double>>> getZeroLengthEdges() {
+        return new ArrayList<Pair<Point<Double>>>(zeroLength);
+    }
+
+    /**
+     * @return edges, as (from,to) pairs, with no edge back from to to from or whose
+     *     edge back has a different length
+     */
+    public List<Pair<Point<Double>>> getAsymmetricEdges() {
+        return new ArrayList<Pair<Point<Double>>>(asymmetric);
+    }
+
+    /**
+     * @return a list of lines describing each problem found, empty if there are none
+     */
+    public List<String> getReport() {
+        List<String> report = new ArrayList<String>();
+        if(componentCount > 1) {
+            report.add(componentCount + " strongly connected components");
+        }
+        for(Pair<Point<Double>> pair : duplicates) {
+            report.add("duplicate coordinates " + pair.first() + "and " + pair.second());
+        }
+        for(Pair<Point<Double>> pair : zeroLength) {
+            report.add("zero length edge " + pair.first() + "-> " + pair.second());
+        }
+        for(Pair<Point<Double>> pair : asymmetric) {
+            report.add("asymmetric edge " + pair.first() + "-> " + pair.second());
+        }
+        return report;
+    }
+
+    /**
+     * Iterative Tarjan. Each frame of the explicit call stack is a node and the
+     * next of its edges to explore.
+     *
+     * @modifies component
+     * @effects fills in component for every node
+     * @return number of components
+     */
+    private int findComponents() {
+        int n = index.size();
+        int[] order = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        int depth = 0;
+        int counter = 0;
+        int components = 0;
+
+        // order[i] == 0 means node i is not visited yet
+        for(int root = 0; root < n; root++) {
+            if(order[root] != 0) {
+                continue;
+            }
+            counter = counter + 1;
+            order[root] = low[root] = counter;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            callNode[0] = root;
+            callEdge[0] = index.edgeStart(root);
+            depth = 1;
+
+            while(depth > 0) {
+                int v = callNode[depth - 1];
+                int e = callEdge[depth - 1];
+                if(e < index.edgeEnd(v)) {
+                    callEdge[depth - 1] = e + 1;
+                    int w = index.target(e);
+                    if(order[w] == 0) {
+                        // Recurse into w
+                        counter = counter + 1;
+                        order[w] = low[w] = counter;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callNode[depth] = w;
+                        callEdge[depth] = index.edgeStart(w);
+                        depth = depth + 1;
+                    } else if(onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    // Return from v
+                    if(low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component[w] = components;
+                        } while(w != v);
+                        components = components + 1;
+                    }
+                    depth = depth - 1;
+                    if(depth > 0) {
+                        int parent = callNode[depth - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * @return reaches for every component. Components are in reverse topological
+     *     order so each one only needs the closures of lower numbered ones.
+     */
+    private BitSet[] closure() {
+        BitSet[] result = new BitSet[componentCount];
+        for(int c = 0; c < componentCount; c++) {
+            result[c] = new BitSet(componentCount);
+        }
+        List<List<Integer>> members = new ArrayList<List<Integer>>();
+        for(int c = 0; c < componentCount; c++) {
+            members.add(new ArrayList<Integer>());
+        }
+        for(int i = 0; i < component.length; i++) {
+            members.get(component[i]).add(i);
+        }
+        for(int c = 0; c < componentCount; c++) {
+            for(int i : members.get(c)) {
+                for(int e = index.edgeStart(i); e < index.edgeEnd(i); e++) {
+                    int d = component[index.target(e)];
+                    if(d != c && !result[c].get(d)) {
+                        result[c].set(d);
+                        result[c].or(result[d]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @modifies duplicates
+     * @effects adds every pair of nodes within DUPLICATE_TOLERANCE of each other
+     */
+    private void findDuplicates() {
+        // Bucket nodes by a grid of cells DUPLICATE_TOLERANCE wide, near
+        // duplicates are in the same or a neighbouring cell.
+        Map<Pair<Long>,List<Integer>> cells = new HashMap<Pair<Long>,List<Integer>>();
+        for(int i = 0; i < index.size(); i++) {
+            Point<Double> p = index.getNode(i);
+            long cx = (long)Math.floor(p.first() / DUPLICATE_TOLERANCE);
+            long cy = (long)Math.floor(p.second() / DUPLICATE_TOLERANCE);
+            for(long dx = -1; dx <= 1; dx++) {
+                for(long dy = -1; dy <= 1; dy++) {
+                    List<Integer> cell = cells.get(new Pair<Long>(cx + dx, cy + dy));
+                    if(cell == null) {
+                        continue;
+                    }
+                    for(int j : cell) {
+                        Point<Double> q = index.getNode(j);
+                        if(Math.abs(p.first() - q.first()) <= DUPLICATE_TOLERANCE
+                                && Math.abs(p.second() - q.second()) <= DUPLICATE_TOLERANCE) {
+                            duplicates.add(new Pair<Point<Double>>(q, p));
+                        }
+                    }
+                }
+            }
+            Pair<Long> key = new Pair<Long>(cx, cy);
+            if(!cells.containsKey(key)) {
+                cells.put(key, new ArrayList<Integer>());
+            }
+            cells.get(key).add(i);
+        }
+    }
+
+    /**
+     * @modifies zeroLength, asymmetric
+     * @effects adds every zero length edge and every edge without a matching edge back
+     */
+    private void findBadEdges() {
+        for(int i = 0; i < index.size(); i++) {
+            for(int e = index.edgeStart(i); e < index.edgeEnd(i); e++) {
+                int j = index.target(e);
+                Pair<Point<Double>> pair = new Pair<Point<Double>>(index.getNode(i), index.getNode(j));
+                if(i == j || index.weight(e) == 0.0) {
+                    zeroLength.add(pair);
+                }
+                int back = index.findEdge(j, i);
+                if(back < 0 || index.weight(back) != index.weight(e)) {
+                    asymmetric.add(pair);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * A read-only, array based copy of a graph of coordinates with distance edges,
+ * for searches that visit many nodes. Nodes are numbered 0 to size()-1 in order of
+ * their coordinates, so the same map always gets the same numbering, and the
+ * edges leaving each node are stored next to each other.
+ *
+ */
+public class GraphIndex {
+
+    // Representation:
+    // nodes[i] is the coordinates of node i, and ids maps coordinates back to i.
+    // The edges leaving node i are numbered offsets[i] to offsets[i+1]-1, edge e
+    // goes to node targets[e] and has length weights[e].
+
+    // Abstraction function:
+    // The graph has an edge from nodes[i] to nodes[targets[e]] of length weights[e]
+    // for every edge e of i. Where the source graph had several edges between
+    // the same two nodes only the shortest is kept.
+
+    private final Point<Double>[] nodes;
+    private final Map<Point<Double>,Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+
+    /**
+     * @param graph graph whose nodes are coordinates and whose edges are distances
+     * @effects Constructs an index of graph
+     */
+    public GraphIndex(ReadableGraph<Point<Double>,Double> graph) {
+        List<Point<Double>> sorted = new ArrayList<Point<Double>>(graph.getNodes());
+        Collections.sort(sorted, new Comparator<Point<Double>>() {
+            public int compare(Point<Double> p1, Point<Double> p2) {
+                int c = Double.compare(p1.first(), p2.first());
+                return c != 0 ? c : Double.compare(p1.second(), p2.second());
+            }
+        });
+
+        nodes = newArray(sorted.size());
+        ids = new HashMap<Point<Double>,Integer>();
+        for(int i = 0; i < nodes.length; i++) {
+            nodes[i] = sorted.get(i);
+            ids.put(nodes[i], i);
+        }
+
+        // Gather the edges of each node in target order
+        offsets = new int[nodes.length + 1];
+        List<Integer> edgeTargets = new ArrayList<Integer>();
+        List<Double> edgeWeights = new ArrayList<Double>();
+        for(int i = 0; i < nodes.length; i++) {
+            offsets[i] = edgeTargets.size();
+            readEdges(graph, nodes, ids, i, edgeTargets, edgeWeights);
+        }
+        offsets[nodes.length] = edgeTargets.size();
+
+        targets = toInts(edgeTargets);
+        weights = toDoubles(edgeWeights);
+        checkRep();
+    }
+
+    /**
+     * @modifies edgeTargets, edgeWeights
+     * @effects appends the targets and lengths of the edges leaving node i of
+     *     graph, numbered as in nodes and ids, in target order
+     */
+    private static void readEdges(ReadableGraph<Point<Double>,Double> graph,
+            Point<Double>[] nodes, Map<Point<Double>,Integer> ids, int i,
+            List<Integer> edgeTargets, List<Double> edgeWeights) {
+        List<Integer> children = new ArrayList<Integer>();
+        for(Point<Double> child : graph.getChildren(nodes[i])) {
+            children.add(ids.get(child));
+        }
+        Collections.sort(children);
+        for(Integer child : children) {
+            double shortest = Double.POSITIVE_INFINITY;
+            for(Double weight : graph.getEdges(nodes[i], nodes[child])) {
+                shortest = Math.min(shortest, weight);
+            }
+            if(shortest != Double.POSITIVE_INFINITY) {
+                edgeTargets.add(child);
+                edgeWeights.add(shortest);
+            }
+        }
+    }
+
+    /**
+     * @effects Constructs an index directly from its arrays
+     */
+    private GraphIndex(Point<Double>[] nodes, Map<Point<Double>,Integer> ids,
+            int[] offsets, int[] targets, double[] weights) {
+        this.nodes = nodes;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        checkRep();
+    }
+
+    /**
+     * Versions share the blocks of nodes no edit changed, so when the nodes are
+     * the same only the edges of nodes in the other blocks are read again, and
+     * the rest are copied from this index. The nodes keep their numbers.
+     *
+     * @param built version of the paths this index was built from
+     * @param edited a later version of the same paths
+     * @return index of edited, built from scratch if edited has other nodes than built
+     */
+    public GraphIndex update(GraphVersion<Point<Double>,Double> built,
+            GraphVersion<Point<Double>,Double> edited) {
+        Map<Point<Double>,Map<Point<Double>,Set<Double>>>[] before = built.blocks();
+        Map<Point<Double>,Map<Point<Double>,Set<Double>>>[] after = edited.blocks();
+        if(edited.size() != nodes.length) {
+            return new GraphIndex(edited);
+        }
+        boolean[] changed = new boolean[nodes.length];
+        for(int b = 0; b < after.length; b++) {
+            if(after[b] == before[b]) {
+                continue;
+            }
+            // As the sizes match, the nodes are the same if each changed block
+            // holds as many nodes as before, all of them in this index
+            if(after[b].size() != before[b].size()) {
+                return new GraphIndex(edited);
+            }
+            for(Point<Double> node : after[b].keySet()) {
+                Integer id = ids.get(node);
+                if(id == null) {
+                    return new GraphIndex(edited);
+                }
+                changed[id] = true;
+            }
+        }
+
+        int[] newOffsets = new int[nodes.length + 1];
+        List<Integer> edgeTargets = new ArrayList<Integer>();
+        List<Double> edgeWeights = new ArrayList<Double>();
+        for(int i = 0; i < nodes.length; i++) {
+            newOffsets[i] = edgeTargets.size();
+            if(changed[i]) {
+                readEdges(edited, nodes, ids, i, edgeTargets, edgeWeights);
+            } else {
+                for(int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    edgeTargets.add(targets[e]);
+                    edgeWeights.add(weights[e]);
+                }
+            }
+        }
+        newOffsets[nodes.length] = edgeTargets.size();
+        return new GraphIndex(nodes, ids, newOffsets, toInts(edgeTargets), toDoubles(edgeWeights));
+    }
+
+    /**
+     * @return index of the same graph with every edge reversed, numbering
+     *     the nodes the same way
+     */
+    public GraphIndex reverse() {
+        int[] counts = new int[nodes.length + 1];
+        for(int e = 0; e < targets.length; e++) {
+            counts[targets[e] + 1]++;
+        }
+        for(int i = 0; i < nodes.length; i++) {
+            counts[i + 1] += counts[i];
+        }
+        int[] reverseOffsets = Arrays.copyOf(counts, counts.length);
+        int[] reverseTargets = new int[targets.length];
+        double[] reverseWeights = new double[weights.length];
+        for(int i = 0; i < nodes.length; i++) {
+            for(int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int slot = counts[targets[e]]++;
+                reverseTargets[slot] = i;
+                reverseWeights[slot] = weights[e];
+            }
+        }
+        return new GraphIndex(nodes, ids, reverseOffsets, reverseTargets, reverseWeights);
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param node coordinates of a node
+     * @return number of the node at node, or -1 if there is none
+     */
+    public int indexOf(Point<Double> node) {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param i number of a node
+     * @return coordinates of node i
+     */
+    public Point<Double> getNode(int i) {
+        return nodes[i];
+    }
+
+    /**
+     * @param i number of a node
+     * @return number of the first edge leaving node i
+     */
+    public int edgeStart(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @param i number of a node
+     * @return one more than the number of the last edge leaving node i
+     */
+    public int edgeEnd(int i) {
+        return offsets[i + 1];
+    }
+
+    /**
+     * @param e number of an edge
+     * @return number of the node edge e leaves
+     */
+    public int source(int e) {
+        // Edges are stored in order of the node they leave, find the
+        // last node whose edges start at or before e
+        int low = 0;
+        int high = nodes.length - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(offsets[mid] <= e) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param e number of an edge
+     * @return number of the node edge e goes to
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * @param e number of an edge
+     * @return length of edge e
+     */
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * @param from number of a node
+     * @param to number of a node
+     * @return number of the edge from node from to node to, or -1 if there is none
+     */
+    public int findEdge(int from, int to) {
+        int e = Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to);
+        return e < 0 ? -1 : e;
+    }
+
+    /**
+     * @return a hash of the coordinates of the nodes and the targets and lengths
+     *     of the edges, for checking that data saved for a map still matches it
+     */
+    public long fingerprint() {
+        long hash = 1125899906842597L;
+        for(int i = 0; i < nodes.length; i++) {
+            hash = 31 * hash + Double.doubleToLongBits(nodes[i].first());
+            hash = 31 * hash + Double.doubleToLongBits(nodes[i].second());
+            hash = 31 * hash + offsets[i + 1];
+        }
+        for(int e = 0; e < targets.length; e++) {
+            hash = 31 * hash + targets[e];
+            hash = 31 * hash + Double.doubleToLongBits(weights[e]);
+        }
+        return hash;
+    }
+
+    private static int[] toInts(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static double[] toDoubles(List<Double> list) {
+        double[] array = new double[list.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Point<Double>[] newArray(int size) {
+        return (Point<Double>[])new Point<?>[size];
+    }
+
+    /**
+     * Checks the representation invariant
+     */
+    private void checkRep() {
+        assert(offsets.length == nodes.length + 1);
+        assert(targets.length == weights.length);
+        assert(offsets[nodes.length] == targets.length);
+    }
+
+}
@@ -0,0 +1,154 @@
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * An immutable version of a VersionedGraph. Nodes are split into BLOCKS blocks
+ * by hash, and a new version shares every block it did not change with the
+ * version it was made from. Readers holding a version are never affected by
+ * later edits, and a version is reclaimed by the garbage collector once no
+ * reader holds it.
+ *
+ */
+public class GraphVersion<N,E> implements ReadableGraph<N,E> {
+
+    // Representation:
+    // blocks[b] maps each node n with blockOf(n) == b to its adjacency, a map from
+    // each child of n to the non-empty set of edge labels from n to the child.
+    // size is the number of nodes in all the blocks. Neither the blocks, the
+    // adjacencies nor the edge sets are modified once the version is published.
+
+    // Abstraction function:
+    // The graph has an edge from n to c with label l for every l in
+    // blocks[blockOf(n)].get(n).get(c), and version is the number of edits made
+    // to the VersionedGraph before this version was published.
+
+    // Number of blocks, a power of two
+    public static final int BLOCKS = 64;
+
+    private final long version;
+    private final Map<N,Map<N,Set<E>>>[] blocks;
+    private final int size;
+
+    /**
+     * @param version number of this version
+     * @param blocks the blocks of this version, which must not be modified afterwards
+     * @param size number of nodes in blocks
+     * @effects Constructs a new version holding blocks
+     */
+    GraphVersion(long version, Map<N,Map<N,Set<E>>>[] blocks, int size) {
+        this.version = version;
+        this.blocks = blocks;
+        this.size = size;
+        checkRep();
+    }
+
+    /**
+     * @param node a node label
+     * @return number of the block node belongs in
+     */
+    static int blockOf(Object node) {
+        int h = node.hashCode();
+        h ^= h >>> 16;
+        return h & (BLOCKS - 1);
+    }
+
+    /**
+     * @return the number of edits made before this version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the blocks of this version, which must not be modified
+     */
+    Map<N,Map<N,Set<E>>>[] blocks() {
+        return blocks;
+    }
+
+    /**
+     * @param node a node label
+     * @return the adjacency of node, or null if it is not in the graph
+     */
+    Map<N,Set<E>> adjacency(N node) {
+        return blocks[blockOf(node)].get(node);
+    }
+
+    /**
+     * @param node a node label
+     * @return true iff node is in the graph
+     */
+    public boolean containsNode(N node) {
+        return blocks[blockOf(node)].containsKey(node);
+    }
+
+    /**
+     *
+     * @return set containing names of all the nodes in the graph
+     */
+    @Override
+    public Set<N> getNodes() {
+        Set<N> nodes = new HashSet<N>();
+        for(Map<N,Map<N,Set<E>>> block : blocks) {
+            nodes.addAll(block.keySet());
+        }
+        return nodes;
+    }
+
+    /**
+     *
+     * @param nodeVal Label of node to get children of
+     * @return set of node names of children of nodeVal
+     * @throws IllegalArgumentException if there is no node in
+            the graph with nodeVal
+     */
+    @Override
+    public Set<N> getChildren(N nodeVal) {
+        Map<N,Set<E>> adjacency = adjacency(nodeVal);
+        if(adjacency == null) {
+            throw new IllegalArgumentException("There does not exist a node in the graph "
+                    + "with label " + nodeVal + ".");
+        }
+        return new HashSet<N>(adjacency.keySet());
+    }
+
+    /**
+        @param node1 label of first node
+        @param node2 label of second node
+        @returns unmodifiable set of edge labels from node1 to node2 in the graph
+        @throws IllegalArgumentException if node1 or node2 are not in the graph
+    */
+    @Override
+    public Set<E> getEdges(N node1, N node2) {
+        Map<N,Set<E>> adjacency = adjacency(node1);
+        if(adjacency == null || !containsNode(node2)) {
+            throw new IllegalArgumentException("Node passed does not exist in the graph.");
+        }
+        Set<E> edges = adjacency.get(node2);
+        if(edges == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(edges);
+    }
+
+    /**
+     *
+     * @return number of nodes in the graph
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks the representation invariant
+     */
+    private void checkRep() {
+        assert(blocks.length == BLOCKS);
+        assert(size >= 0);
+    }
+
+}
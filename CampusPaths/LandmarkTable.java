@@ -0,0 +1,347 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Distances between every node of a map and a few landmark nodes, used for
+ * lower bounds on the distance between any two nodes (the ALT technique).
+ * By the triangle inequality the distance from v to t is at least
+ * d(L,t) - d(L,v) and d(v,L) - d(t,L) for every landmark L. Walkways bend around
+ * buildings, so these bounds are much tighter than straight line distance.
+ *
+ * Landmarks are chosen by farthest point selection, each one as far as possible
+ * from the ones before it. The table is saved next to the map data and reused
+ * for as long as the map does not change.
+ *
+ */
+public class LandmarkTable {
+
+    // Representation:
+    // landmarks[l] is the node number of landmark l. For node v,
+    // from[v * landmarks.length + l] is the distance from landmark l to v and
+    // to[v * landmarks.length + l] is the distance from v to landmark l, infinite
+    // where there is no path. In a table carried over to an edited map they are
+    // the distances on the map before, never more than those on the edited map.
+    // fingerprint is the fingerprint of the map the table is for.
+
+    // Default number of landmarks
+    public static final int DEFAULT_LANDMARKS = 8;
+
+    // Suffix added to the name of the paths file to name the saved table
+    public static final String SUFFIX = ".landmarks";
+
+    private static final int MAGIC = 0x43504c4d;
+    private static final int VERSION = 1;
+
+    private final int[] landmarks;
+    private final float[] from;
+    private final float[] to;
+    private final long fingerprint;
+
+    /**
+     * @effects Constructs a table from its arrays
+     */
+    private LandmarkTable(int[] landmarks, float[] from, float[] to, long fingerprint) {
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+        this.fingerprint = fingerprint;
+        checkRep();
+    }
+
+    /**
+     * @param file file the table is saved in
+     * @param index map to get the table for
+     * @param count number of landmarks if the table has to be computed
+     * @requires count > 0
+     * @return the table saved in file if it was computed for index, otherwise a
+     *     newly computed table which is saved to file. Failing to save is ignored.
+     */
+    public static LandmarkTable loadOrCompute(String file, GraphIndex index, int count) {
+        LandmarkTable table = load(file, index);
+        if(table == null) {
+            table = compute(index, count);
+            try {
+                table.save(file);
+            } catch(IOException e) {
+                // The table is only a cache, it is computed again next time
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param index map to compute the table for
+     * @param count number of landmarks
+     * @requires count > 0
+     * @return a table of min(count, index.size()) landmarks chosen by farthest
+     *     point selection, where nodes no landmark reaches count as farthest, so
+     *     each part of a disconnected map gets landmarks of its own. Searches to
+     *     the landmarks are run in parallel.
+     */
+    public static LandmarkTable compute(final GraphIndex index, int count) {
+        int n = index.size();
+        int[] chosen = new int[Math.min(count, n)];
+        if(chosen.length == 0) {
+            return new LandmarkTable(chosen, new float[0], new float[0], index.fingerprint());
+        }
+
+        // Start from the node farthest from an arbitrary node, then repeatedly take
+        // the node whose nearest landmark is farthest away. Each choice depends
+        // on the searches before it, so these run one after another.
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        List<double[]> fromLandmarks = new ArrayList<double[]>();
+        int next = farthest(RouteSearch.distances(index, 0), chosen, 0);
+        while(next >= 0 && fromLandmarks.size() < chosen.length) {
+            chosen[fromLandmarks.size()] = next;
+            double[] dist = RouteSearch.distances(index, next);
+            fromLandmarks.add(dist);
+            for(int v = 0; v < n; v++) {
+                if(dist[v] < nearest[v]) {
+                    nearest[v] = dist[v];
+                }
+            }
+            next = farthest(nearest, chosen, fromLandmarks.size());
+        }
+        int k = fromLandmarks.size();
+        chosen = Arrays.copyOf(chosen, k);
+        float[] from = new float[n * k];
+        float[] to = new float[n * k];
+        for(int l = 0; l < k; l++) {
+            double[] dist = fromLandmarks.get(l);
+            for(int v = 0; v < n; v++) {
+                from[v * k + l] = (float)dist[v];
+            }
+        }
+
+        // Distances to the landmarks are searches on the reversed map, which are
+        // independent of each other.
+        final GraphIndex reverse = index.reverse();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(k, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+            for(int l = 0; l < k; l++) {
+                final int landmark = chosen[l];
+                results.add(pool.submit(new Callable<double[]>() {
+                    public double[] call() {
+                        return RouteSearch.distances(reverse, landmark);
+                    }
+                }));
+            }
+            for(int l = 0; l < k; l++) {
+                double[] dist = results.get(l).get();
+                for(int v = 0; v < n; v++) {
+                    to[v * k + l] = (float)dist[v];
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing landmarks.", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Failed to compute landmarks.", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        return new LandmarkTable(chosen, from, to, index.fingerprint());
+    }
+
+    /**
+     * @param dist distance of every node
+     * @param exclude nodes that may not be chosen
+     * @param excludeCount number of nodes at the start of exclude to use
+     * @return the node with the largest distance not excluded, an infinite
+     *     distance being the largest, or -1 if every node is excluded
+     */
+    private static int farthest(double[] dist, int[] exclude, int excludeCount) {
+        int best = -1;
+        double bestDist = -1.0;
+        for(int v = 0; v < dist.length; v++) {
+            if(dist[v] <= bestDist) {
+                continue;
+            }
+            boolean excluded = false;
+            for(int l = 0; l < excludeCount; l++) {
+                excluded = excluded || exclude[l] == v;
+            }
+            if(!excluded) {
+                best = v;
+                bestDist = dist[v];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param v number of a node
+     * @param t number of a node
+     * @return a lower bound on the distance from v to t, never more than the true distance
+     */
+    public double lowerBound(int v, int t) {
+        int k = landmarks.length;
+        double bound = 0.0;
+        int vBase = v * k;
+        int tBase = t * k;
+        for(int l = 0; l < k; l++) {
+            float fromV = from[vBase + l];
+            float fromT = from[tBase + l];
+            if(fromV != Float.POSITIVE_INFINITY && fromT != Float.POSITIVE_INFINITY) {
+                // Widen by the rounding error of the stored floats to stay a lower bound
+                double b = (double)fromT - fromV - Math.ulp(fromT) - Math.ulp(fromV);
+                if(b > bound) {
+                    bound = b;
+                }
+            }
+            float toV = to[vBase + l];
+            float toT = to[tBase + l];
+            if(toV != Float.POSITIVE_INFINITY && toT != Float.POSITIVE_INFINITY) {
+                double b = (double)toV - toT - Math.ulp(toV) - Math.ulp(toT);
+                if(b > bound) {
+                    bound = b;
+                }
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * @return node numbers of the landmarks
+     */
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * Removing or lengthening edges never makes a route shorter, so the distances
+     * of this table still give lower bounds on the edited map, if looser ones.
+     * Adding or shortening an edge can make a route shorter than the bounds.
+     *
+     * @param index map this table was computed for
+     * @param edited the map after edits, numbering the same nodes the same way
+     * @return a table for edited with the landmarks and distances of this table,
+     *     or null if edited has other nodes than index, or an edge that index does
+     *     not have or that is shorter than in index
+     */
+    public LandmarkTable carryOver(GraphIndex index, GraphIndex edited) {
+        if(edited.size() != index.size()) {
+            return null;
+        }
+        for(int v = 0; v < edited.size(); v++) {
+            if(!edited.getNode(v).equals(index.getNode(v))) {
+                return null;
+            }
+            for(int e = edited.edgeStart(v); e < edited.edgeEnd(v); e++) {
+                int old = index.findEdge(v, edited.target(e));
+                if(old < 0 || edited.weight(e) < index.weight(old)) {
+                    return null;
+                }
+            }
+        }
+        return new LandmarkTable(landmarks, from, to, edited.fingerprint());
+    }
+
+    /**
+     * @param index a map
+     * @return true iff this table was computed for index
+     */
+    public boolean matches(GraphIndex index) {
+        return fingerprint == index.fingerprint() && from.length == index.size() * landmarks.length;
+    }
+
+    /**
+     * @param file file to save the table to
+     * @effects writes the table to file
+     * @throws IOException if the file can not be written
+     */
+    public void save(String file) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(from.length);
+            out.writeInt(landmarks.length);
+            for(int landmark : landmarks) {
+                out.writeInt(landmark);
+            }
+            for(float d : from) {
+                out.writeFloat(d);
+            }
+            for(float d : to) {
+                out.writeFloat(d);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param file file a table was saved to
+     * @param index map the table is needed for
+     * @return the table saved in file, or null if there is none, it can not be
+     *     read, or it was computed for a different map
+     */
+    public static LandmarkTable load(String file, GraphIndex index) {
+        if(!new File(file).isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return null;
+                }
+                long fingerprint = in.readLong();
+                int size = in.readInt();
+                int k = in.readInt();
+                if(fingerprint != index.fingerprint() || k < 0 || size != index.size() * k) {
+                    return null;
+                }
+                int[] landmarks = new int[k];
+                for(int l = 0; l < k; l++) {
+                    landmarks[l] = in.readInt();
+                }
+                float[] from = new float[size];
+                for(int i = 0; i < size; i++) {
+                    from[i] = in.readFloat();
+                }
+                float[] to = new float[size];
+                for(int i = 0; i < size; i++) {
+                    to[i] = in.readFloat();
+                }
+                return new LandmarkTable(landmarks, from, to, fingerprint);
+            } finally {
+                in.close();
+            }
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks the representation invariant
+     */
+    private void checkRep() {
+        assert(from.length == to.length);
+        assert(landmarks.length == 0 || from.length % landmarks.length == 0);
+    }
+
+}
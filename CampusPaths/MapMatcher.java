@@ -0,0 +1,352 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Snaps location traces onto the walkways of a map with a hidden Markov model.
+ * The candidates for each location are the closest points on the walkways within
+ * a radius, found with a SegmentGrid. A candidate is more likely the closer it is
+ * to the location, and a move between candidates of consecutive locations is
+ * more likely the closer its walking distance is to the straight line distance.
+ * Walking distances come from short searches bounded by the straight line
+ * distance. The most likely sequence of candidates is found with the Viterbi
+ * algorithm one location at a time, see MatchSession.
+ *
+ * Locations are in the same coordinates as the map. A trace file has one location
+ * per line, whose last two tab or space separated values are x and y, so a
+ * leading timestamp is allowed. The match of trace file f is written to
+ * f + ".matched", one line x\ty\tsnappedX\tsnappedY per location, with null
+ * for locations that could not be matched.
+ *
+ * Usage: MapMatcher traceFile...
+ *
+ */
+public class MapMatcher {
+
+    // Standard deviation of location error, in map units
+    public static final double DEFAULT_SIGMA = 10.0;
+    // Scale of the difference between walking and straight line distance, in map units
+    public static final double DEFAULT_BETA = 20.0;
+    // Largest distance from a location to its candidates, in map units
+    public static final double DEFAULT_RADIUS = 50.0;
+    // Most candidates per location
+    public static final int DEFAULT_CANDIDATES = 8;
+
+    // Searches between candidates give up after this multiple of the straight
+    // line distance plus twice the radius
+    private static final double SEARCH_FACTOR = 3.0;
+
+    private final GraphIndex index;
+    private final SegmentGrid grid;
+    private final double[] lengths;
+    private final double sigma;
+    private final double beta;
+    private final double radius;
+    private final int maxCandidates;
+
+    /**
+     * @param index map to match onto
+     * @effects Constructs a matcher with the default parameters
+     */
+    public MapMatcher(GraphIndex index) {
+        this(index, DEFAULT_SIGMA, DEFAULT_BETA, DEFAULT_RADIUS, DEFAULT_CANDIDATES);
+    }
+
+    /**
+     * @param index map to match onto
+     * @param sigma standard deviation of location error
+     * @param beta scale of the difference between walking and straight line distance
+     * @param radius largest distance from a location to its candidates
+     * @param maxCandidates most candidates per location
+     * @requires sigma, beta, radius, maxCandidates > 0
+     * @effects Constructs a matcher
+     */
+    public MapMatcher(GraphIndex index, double sigma, double beta, double radius,
+            int maxCandidates) {
+        this.index = index;
+        this.grid = new SegmentGrid(index, radius);
+        this.sigma = sigma;
+        this.beta = beta;
+        this.radius = radius;
+        this.maxCandidates = maxCandidates;
+
+        // Matching works in map coordinates, so walk the edges by their geometry
+        this.lengths = new double[index.edgeCount()];
+        for(int v = 0; v < index.size(); v++) {
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                Point<Double> from = index.getNode(v);
+                Point<Double> to = index.getNode(index.target(e));
+                lengths[e] = Math.hypot(to.first() - from.first(), to.second() - from.second());
+            }
+        }
+    }
+
+    /**
+     * @return the map matched onto
+     */
+    public GraphIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param out where matched locations are written
+     * @return a new session for matching one trace
+     */
+    public MatchSession newSession(PrintWriter out) {
+        return new MatchSession(this, out);
+    }
+
+    /**
+     * @param x x coordinate of a location
+     * @param y y coordinate of a location
+     * @return numbers of the edges within radius of (x,y), closest first,
+     *     at most maxCandidates of them
+     */
+    int[] candidates(final double x, final double y) {
+        int[] edges = grid.near(x, y, radius);
+        double[] dist = new double[edges.length];
+        for(int i = 0; i < edges.length; i++) {
+            dist[i] = grid.distance(edges[i], x, y);
+        }
+        // Selection of the closest, there are only a few
+        int count = Math.min(edges.length, maxCandidates);
+        for(int i = 0; i < count; i++) {
+            int best = i;
+            for(int j = i + 1; j < edges.length; j++) {
+                if(dist[j] < dist[best]) {
+                    best = j;
+                }
+            }
+            int e = edges[i];
+            edges[i] = edges[best];
+            edges[best] = e;
+            double d = dist[i];
+            dist[i] = dist[best];
+            dist[best] = d;
+        }
+        return Arrays.copyOf(edges, count);
+    }
+
+    /**
+     * @return fraction of the way along edge e of its closest point to (x,y)
+     */
+    double project(int e, double x, double y) {
+        return grid.project(e, x, y);
+    }
+
+    /**
+     * @return log likelihood of a location at distance d from its candidate
+     */
+    double emission(double d) {
+        return -0.5 * (d / sigma) * (d / sigma);
+    }
+
+    /**
+     * @return log likelihood of walking walked between candidates whose
+     *     locations are straight apart
+     */
+    double transition(double walked, double straight) {
+        return -Math.abs(walked - straight) / beta;
+    }
+
+    /**
+     * @param e number of an edge
+     * @param t fraction of the way along e
+     * @return coordinates of the point t of the way along e
+     */
+    Point<Double> pointOn(int e, double t) {
+        Point<Double> from = index.getNode(index.source(e));
+        Point<Double> to = index.getNode(index.target(e));
+        return new Point<Double>(from.first() + t * (to.first() - from.first()),
+                from.second() + t * (to.second() - from.second()));
+    }
+
+    /**
+     * Walking distances from one candidate to several others, by a search
+     * that starts at both ends of the first candidate's walkway.
+     *
+     * @param e edge of the first candidate
+     * @param t fraction of the way along e of the first candidate
+     * @param toEdges edges of the other candidates
+     * @param toT fractions of the way along toEdges of the other candidates
+     * @param straight straight line distance between the two locations
+     * @param w search arrays of the caller
+     * @modifies w
+     * @return walking distance to each other candidate, infinite where it is
+     *     further than the search limit
+     */
+    double[] walkingDistances(int e, double t, int[] toEdges, double[] toT, double straight,
+            SearchSpace w) {
+        double limit = SEARCH_FACTOR * straight + 2 * radius;
+        w.begin();
+        int from = index.source(e);
+        int to = index.target(e);
+        w.reach(from, t * lengths[e]);
+        w.reach(to, (1 - t) * lengths[e]);
+
+        while(!w.heap.isEmpty() && w.heap.peekKey() <= limit) {
+            double key = w.heap.peekKey();
+            int v = w.heap.pop();
+            if(key > w.distance(v)) {
+                continue;
+            }
+            for(int f = index.edgeStart(v); f < index.edgeEnd(v); f++) {
+                w.reach(index.target(f), key + lengths[f]);
+            }
+        }
+
+        double[] result = new double[toEdges.length];
+        for(int i = 0; i < toEdges.length; i++) {
+            int g = toEdges[i];
+            int gFrom = index.source(g);
+            int gTo = index.target(g);
+            double d = Math.min(w.distance(gFrom) + toT[i] * lengths[g],
+                    w.distance(gTo) + (1 - toT[i]) * lengths[g]);
+            // Along the same walkway, in either direction
+            if(g == e || (gFrom == to && gTo == from)) {
+                double along = g == e ? toT[i] : 1 - toT[i];
+                d = Math.min(d, Math.abs(along - t) * lengths[e]);
+            }
+            result[i] = d <= limit ? d : Double.POSITIVE_INFINITY;
+        }
+        return result;
+    }
+
+    /**
+     * Search arrays of one session. An entry of dist is only valid for the
+     * current search if seen holds the search number.
+     */
+    static class SearchSpace {
+        private final double[] dist;
+        private final int[] seen;
+        private final MinHeap heap;
+        private int search;
+
+        SearchSpace(int size) {
+            dist = new double[size];
+            seen = new int[size];
+            heap = new MinHeap();
+            search = 0;
+        }
+
+        private void begin() {
+            search = search + 1;
+            if(search == 0) {
+                Arrays.fill(seen, 0);
+                search = 1;
+            }
+            heap.clear();
+        }
+
+        private double distance(int v) {
+            return seen[v] == search ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        private void reach(int v, double d) {
+            if(d < distance(v)) {
+                seen[v] = search;
+                dist[v] = d;
+                heap.push(v, d);
+            }
+        }
+    }
+
+    /**
+     * @return new search arrays for a session
+     */
+    SearchSpace newSearchSpace() {
+        return new SearchSpace(index.size());
+    }
+
+    /**
+     * @param in trace file to match
+     * @param out file to write the matched trace to
+     * @effects matches the trace in in, reading it one location at a time
+     * @throws IOException if in can not be read or out can not be written
+     */
+    public void matchFile(String in, String out) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(in));
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(out)));
+        try {
+            MatchSession session = newSession(writer);
+            String line = reader.readLine();
+            while(line != null) {
+                String[] tokens = line.trim().split("[\t ]+");
+                if(tokens.length >= 2) {
+                    try {
+                        double x = Double.parseDouble(tokens[tokens.length - 2]);
+                        double y = Double.parseDouble(tokens[tokens.length - 1]);
+                        session.add(x, y);
+                    } catch(NumberFormatException e) {
+                        // Header or malformed line, skip it
+                    }
+                }
+                line = reader.readLine();
+            }
+            session.finish();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * @param files trace files to match
+     * @param threads number of traces to match at once
+     * @requires threads > 0
+     * @effects matches each trace file f into f + ".matched"
+     * @throws IOException if any trace can not be read or written
+     */
+    public void matchFiles(List<String> files, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for(final String file : files) {
+                results.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        matchFile(file, file + ".matched");
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> result : results) {
+                result.get();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while matching traces.", e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IllegalStateException("Failed to match traces.", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Matches the trace files named in args onto the default campus map.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: MapMatcher traceFile...");
+            System.exit(1);
+        }
+        MapMatcher matcher = new MapMatcher(new CampusData().getIndex());
+        matcher.matchFiles(Arrays.asList(args), Runtime.getRuntime().availableProcessors());
+    }
+
+}
@@ -0,0 +1,251 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * Matches one location trace onto the walkways of a MapMatcher, a location at a
+ * time. Keeps the most likely candidate sequence ending at each candidate of the
+ * latest location. Once every one of those sequences passes through the same
+ * candidate of an earlier location, the match up to there can no longer change,
+ * so it is written out and the states before it are let go. If that has not
+ * happened for MAX_WINDOW locations the best sequence so far is written out
+ * anyway, so a session uses bounded memory however long the trace.
+ *
+ * Where a location has no candidates, or no candidate can be walked to from the
+ * last, the match is finished there and a new one starts from the next location.
+ *
+ */
+public class MatchSession {
+
+    // Representation:
+    // current holds the states of the latest location, each the end of the most
+    // likely sequence to its candidate, linked back by prev. States at or before
+    // step emitted have been written and have prev null. step is the number of
+    // locations added. Scores are log likelihoods, shifted so the best current
+    // score is 0.
+
+    // Most locations held before the best sequence is written regardless
+    public static final int MAX_WINDOW = 64;
+
+    private final MapMatcher matcher;
+    private final PrintWriter out;
+    private final MapMatcher.SearchSpace space;
+    private List<State> current;
+    private int step;
+    private int emitted;
+
+    /**
+     * One candidate of one location.
+     */
+    private static class State {
+        private final int step;
+        private final double x, y;
+        private final int edge;
+        private final double t;
+        private final double score;
+        private State prev;
+
+        private State(int step, double x, double y, int edge, double t, double score, State prev) {
+            this.step = step;
+            this.x = x;
+            this.y = y;
+            this.edge = edge;
+            this.t = t;
+            this.score = score;
+            this.prev = prev;
+        }
+    }
+
+    /**
+     * @param matcher matcher to match with
+     * @param out where matched locations are written
+     * @effects Constructs a session with no locations
+     */
+    MatchSession(MapMatcher matcher, PrintWriter out) {
+        this.matcher = matcher;
+        this.out = out;
+        this.space = matcher.newSearchSpace();
+        this.current = new ArrayList<State>();
+        this.step = 0;
+        this.emitted = 0;
+    }
+
+    /**
+     * @param x x coordinate of the next location of the trace
+     * @param y y coordinate of the next location of the trace
+     * @modifies this
+     * @effects adds the location to the match, writing out any locations whose
+     *     match is settled
+     */
+    public void add(double x, double y) {
+        int[] edges = matcher.candidates(x, y);
+        if(edges.length == 0) {
+            finish();
+            step = step + 1;
+            out.println(x + "\t" + y + "\tnull\tnull");
+            emitted = step;
+            return;
+        }
+
+        double[] t = new double[edges.length];
+        double[] scores = new double[edges.length];
+        State[] prev = new State[edges.length];
+        for(int i = 0; i < edges.length; i++) {
+            t[i] = matcher.project(edges[i], x, y);
+            scores[i] = Double.NEGATIVE_INFINITY;
+        }
+
+        // Best way to reach each candidate from the states of the last location
+        for(State from : current) {
+            double straight = Math.hypot(x - from.x, y - from.y);
+            double[] walked = matcher.walkingDistances(from.edge, from.t, edges, t, straight, space);
+            for(int i = 0; i < edges.length; i++) {
+                double score = from.score + matcher.transition(walked[i], straight);
+                if(score > scores[i]) {
+                    scores[i] = score;
+                    prev[i] = from;
+                }
+            }
+        }
+
+        // A fresh start when nothing before connects
+        boolean connected = false;
+        for(int i = 0; i < edges.length; i++) {
+            connected = connected || prev[i] != null;
+        }
+        if(!connected) {
+            finish();
+            for(int i = 0; i < edges.length; i++) {
+                scores[i] = 0.0;
+            }
+        }
+
+        step = step + 1;
+        double best = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < edges.length; i++) {
+            if(scores[i] != Double.NEGATIVE_INFINITY) {
+                Point<Double> snapped = matcher.pointOn(edges[i], t[i]);
+                scores[i] += matcher.emission(Math.hypot(x - snapped.first(), y - snapped.second()));
+                best = Math.max(best, scores[i]);
+            }
+        }
+        current = new ArrayList<State>();
+        for(int i = 0; i < edges.length; i++) {
+            if(scores[i] != Double.NEGATIVE_INFINITY) {
+                current.add(new State(step, x, y, edges[i], t[i], scores[i] - best, prev[i]));
+            }
+        }
+
+        emitSettled();
+        if(step - emitted > MAX_WINDOW) {
+            emitBest(step - MAX_WINDOW / 2);
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects writes out the most likely match of every location not yet written
+     *     and starts a new match from the next location
+     */
+    public void finish() {
+        if(!current.isEmpty()) {
+            write(best(), emitted);
+        }
+        current = new ArrayList<State>();
+        emitted = step;
+        out.flush();
+    }
+
+    /**
+     * @modifies this
+     * @effects writes out the locations up to the latest one every current
+     *     sequence passes through
+     */
+    private void emitSettled() {
+        List<State> walk = new ArrayList<State>(current);
+        while(true) {
+            State first = walk.get(0);
+            boolean same = true;
+            for(State state : walk) {
+                same = same && state == first;
+            }
+            if(same) {
+                if(first.step > emitted) {
+                    write(first, emitted);
+                    emitted = first.step;
+                    first.prev = null;
+                }
+                return;
+            }
+            for(int i = 0; i < walk.size(); i++) {
+                State prev = walk.get(i).prev;
+                if(prev == null || prev.step <= emitted) {
+                    return;
+                }
+                walk.set(i, prev);
+            }
+        }
+    }
+
+    /**
+     * @param until last location to write
+     * @modifies this
+     * @effects writes out the locations up to until along the most likely sequence
+     *     and drops the current states whose sequence disagrees with it
+     */
+    private void emitBest(int until) {
+        State cut = ancestor(best(), until);
+        write(cut, emitted);
+        emitted = until;
+
+        List<State> kept = new ArrayList<State>();
+        for(State state : current) {
+            if(ancestor(state, until) == cut) {
+                kept.add(state);
+            }
+        }
+        current = kept;
+        cut.prev = null;
+    }
+
+    /**
+     * @return the state of location at on the sequence ending at state
+     */
+    private static State ancestor(State state, int at) {
+        while(state != null && state.step > at) {
+            state = state.prev;
+        }
+        return state;
+    }
+
+    /**
+     * @return the most likely current state
+     */
+    private State best() {
+        State best = current.get(0);
+        for(State state : current) {
+            if(state.score > best.score) {
+                best = state;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @effects writes out the states of the sequence ending at last after location after
+     */
+    private void write(State last, int after) {
+        List<State> sequence = new ArrayList<State>();
+        for(State state = last; state != null && state.step > after; state = state.prev) {
+            sequence.add(state);
+        }
+        Collections.reverse(sequence);
+        for(State state : sequence) {
+            Point<Double> snapped = matcher.pointOn(state.edge, state.t);
+            out.println(state.x + "\t" + state.y + "\t" + snapped.first() + "\t" + snapped.second());
+        }
+    }
+
+}
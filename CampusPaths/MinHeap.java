@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/**
+ *
+ * A binary min heap of node numbers keyed by distance, for graph searches.
+ * A node may be pushed several times with different keys, searches skip
+ * the stale copies as they are popped. Keys and nodes are kept in arrays
+ * so no objects are created per push.
+ *
+ */
+public class MinHeap {
+
+    // Representation:
+    // keys[0..size-1] and nodes[0..size-1] form a binary heap where
+    // keys[i] <= keys[2i+1] and keys[i] <= keys[2i+2].
+
+    private double[] keys;
+    private int[] nodes;
+    private int size;
+
+    /**
+     * @effects Constructs a new empty heap
+     */
+    public MinHeap() {
+        keys = new double[16];
+        nodes = new int[16];
+        size = 0;
+    }
+
+    /**
+     * @return true iff the heap is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @modifies this
+     * @effects removes everything from the heap
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param node node number to add
+     * @param key distance of node
+     * @modifies this
+     * @effects adds node with key
+     */
+    public void push(int node, double key) {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        int i = size;
+        size = size + 1;
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(keys[parent] <= key) {
+                break;
+            }
+            keys[i] = keys[parent];
+            nodes[i] = nodes[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+    }
+
+    /**
+     * @requires !isEmpty()
+     * @return the smallest key in the heap
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @requires !isEmpty()
+     * @modifies this
+     * @return the node with the smallest key, removing it from the heap
+     */
+    public int pop() {
+        int top = nodes[0];
+        size = size - 1;
+        double key = keys[size];
+        int node = nodes[size];
+        int i = 0;
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) {
+                break;
+            }
+            if(child + 1 < size && keys[child + 1] < keys[child]) {
+                child = child + 1;
+            }
+            if(key <= keys[child]) {
+                break;
+            }
+            keys[i] = keys[child];
+            nodes[i] = nodes[child];
+            i = child;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+        return top;
+    }
+
+}
@@ -0,0 +1,322 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * Counts how many shortest routes between buildings use each walkway, the edge
+ * betweenness of the map restricted to building sources and targets. Uses
+ * Brandes' algorithm: one search per building, then a pass back over the nodes
+ * in reverse order of distance accumulating how many routes pass through each
+ * edge. Where several routes are equally short each gets an equal share.
+ * The searches are split across a ForkJoinPool and each worker thread adds into
+ * its own accumulator, which are summed at the end.
+ *
+ * Usage: PathUsage outputFile, writes the usage of the default campus map.
+ *
+ */
+public class PathUsage {
+
+    // Representation:
+    // index is the map. weight[v] is the number of buildings at node v, and sources
+    // holds every node with weight > 0. usage[e] is the number of routes between
+    // pairs of different buildings that use edge e, or usage is null before compute.
+
+    // Most sources searched by one task before it is split
+    private static final int SOURCES_PER_TASK = 4;
+
+    // Relative difference under which two distances count as equal
+    private static final double TIE_TOLERANCE = 1e-9;
+
+    private final GraphIndex index;
+    private final GraphIndex reverse;
+    private final int[] weight;
+    private final int[] sources;
+    private double[] usage;
+
+    /**
+     * Search arrays and accumulator of one worker thread.
+     */
+    private static class Workspace {
+        private final double[] dist;
+        private final double[] sigma;
+        private final double[] delta;
+        private final int[] position;
+        private final int[] order;
+        private final double[] accumulated;
+        private final MinHeap heap;
+
+        private Workspace(int nodes, int edges) {
+            dist = new double[nodes];
+            sigma = new double[nodes];
+            delta = new double[nodes];
+            position = new int[nodes];
+            order = new int[nodes];
+            accumulated = new double[edges];
+            heap = new MinHeap();
+        }
+    }
+
+    /**
+     * @param index map to analyse
+     * @param buildings coordinates of the buildings, which may repeat
+     * @effects Constructs an analysis of routes between buildings on index.
+     *     Buildings that are not nodes of index are ignored.
+     */
+    public PathUsage(GraphIndex index, Collection<Point<Double>> buildings) {
+        this.index = index;
+        this.reverse = index.reverse();
+        this.weight = new int[index.size()];
+        int count = 0;
+        for(Point<Double> building : buildings) {
+            int v = index.indexOf(building);
+            if(v >= 0) {
+                if(weight[v] == 0) {
+                    count = count + 1;
+                }
+                weight[v] = weight[v] + 1;
+            }
+        }
+        this.sources = new int[count];
+        int i = 0;
+        for(int v = 0; v < weight.length; v++) {
+            if(weight[v] > 0) {
+                sources[i] = v;
+                i = i + 1;
+            }
+        }
+        this.usage = null;
+    }
+
+    /**
+     * @param pool pool to run the searches in
+     * @modifies this
+     * @effects counts the routes using each edge
+     */
+    public void compute(ForkJoinPool pool) {
+        final List<Workspace> workspaces = new ArrayList<Workspace>();
+        final ThreadLocal<Workspace> local = new ThreadLocal<Workspace>() {
+            @Override
+            protected Workspace initialValue() {
+                Workspace w = new Workspace(index.size(), index.edgeCount());
+                synchronized(workspaces) {
+                    workspaces.add(w);
+                }
+                return w;
+            }
+        };
+
+        /**
+         * Searches from sources first to last-1, splitting the range in half
+         * until it is small.
+         */
+        class SourceTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int first, last;
+
+            SourceTask(int first, int last) {
+                this.first = first;
+                this.last = last;
+            }
+
+            @Override
+            protected void compute() {
+                if(last - first <= SOURCES_PER_TASK) {
+                    Workspace w = local.get();
+                    for(int i = first; i < last; i++) {
+                        accumulate(sources[i], w);
+                    }
+                } else {
+                    int middle = (first + last) >>> 1;
+                    invokeAll(new SourceTask(first, middle), new SourceTask(middle, last));
+                }
+            }
+        }
+
+        pool.invoke(new SourceTask(0, sources.length));
+
+        double[] total = new double[index.edgeCount()];
+        for(Workspace w : workspaces) {
+            for(int e = 0; e < total.length; e++) {
+                total[e] += w.accumulated[e];
+            }
+        }
+        usage = total;
+    }
+
+    /**
+     * Brandes' accumulation from one source.
+     *
+     * @modifies w
+     * @effects adds the share of each edge in the routes from s to every other
+     *     building to w.accumulated
+     */
+    private void accumulate(int s, Workspace w) {
+        int reached = search(s, w);
+        double[] dist = w.dist;
+
+        // Number of shortest routes from s to each node
+        for(int i = 0; i < reached; i++) {
+            int v = w.order[i];
+            w.delta[v] = 0.0;
+            if(v == s) {
+                w.sigma[v] = 1.0;
+                continue;
+            }
+            double sigma = 0.0;
+            for(int re = reverse.edgeStart(v); re < reverse.edgeEnd(v); re++) {
+                int u = reverse.target(re);
+                if(isPredecessor(u, v, reverse.weight(re), dist, w.position)) {
+                    sigma += w.sigma[u];
+                }
+            }
+            w.sigma[v] = sigma;
+        }
+
+        // Back from the farthest node, pass each node's routes on to its predecessors
+        for(int i = reached - 1; i > 0; i--) {
+            int v = w.order[i];
+            double carried = (v == s ? 0 : weight[v]) + w.delta[v];
+            if(carried == 0.0 || w.sigma[v] == 0.0) {
+                continue;
+            }
+            for(int re = reverse.edgeStart(v); re < reverse.edgeEnd(v); re++) {
+                int u = reverse.target(re);
+                if(isPredecessor(u, v, reverse.weight(re), dist, w.position)) {
+                    double share = w.sigma[u] / w.sigma[v] * carried;
+                    w.accumulated[index.findEdge(u, v)] += share * weight[s];
+                    w.delta[u] += share;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true iff the edge of length length from u to v is on a shortest
+     *     route to v. u must come before v so zero length loops are not followed.
+     */
+    private static boolean isPredecessor(int u, int v, double length, double[] dist, int[] position) {
+        if(dist[u] == Double.POSITIVE_INFINITY || position[u] >= position[v]) {
+            return false;
+        }
+        double through = dist[u] + length;
+        return Math.abs(through - dist[v]) <= TIE_TOLERANCE * Math.max(1.0, dist[v]);
+    }
+
+    /**
+     * Dijkstra's algorithm recording the order nodes are settled in.
+     *
+     * @modifies w
+     * @effects fills w.dist with the distance from s to every node and the start
+     *     of w.order with the reachable nodes in increasing order of distance
+     * @return number of reachable nodes
+     */
+    private int search(int s, Workspace w) {
+        double[] dist = w.dist;
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        MinHeap heap = w.heap;
+        heap.clear();
+        dist[s] = 0.0;
+        heap.push(s, 0.0);
+        int reached = 0;
+        while(!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int v = heap.pop();
+            if(key > dist[v]) {
+                continue;
+            }
+            w.position[v] = reached;
+            w.order[reached] = v;
+            reached = reached + 1;
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                int u = index.target(e);
+                double d = key + index.weight(e);
+                if(d < dist[u]) {
+                    dist[u] = d;
+                    heap.push(u, d);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * @param e number of an edge of the map
+     * @requires compute has been called
+     * @return number of routes between buildings using edge e
+     */
+    public double getUsage(int e) {
+        return usage[e];
+    }
+
+    /**
+     * @requires compute has been called
+     * @return map from each walkway, as a pair of its end points in coordinate
+     *     order, to the number of routes using it in either direction. Unused
+     *     walkways are left out.
+     */
+    public Map<Pair<Point<Double>>,Double> getWalkwayUsage() {
+        Map<Pair<Point<Double>>,Double> result = new HashMap<Pair<Point<Double>>,Double>();
+        for(int v = 0; v < index.size(); v++) {
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                if(usage[e] == 0.0) {
+                    continue;
+                }
+                int u = index.target(e);
+                // Nodes are numbered in coordinate order
+                Pair<Point<Double>> key = v < u
+                        ? new Pair<Point<Double>>(index.getNode(v), index.getNode(u))
+                        : new Pair<Point<Double>>(index.getNode(u), index.getNode(v));
+                Double previous = result.get(key);
+                result.put(key, (previous == null ? 0.0 : previous) + usage[e]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param file file to write to
+     * @requires compute has been called
+     * @effects writes one line per used edge of the form x1\ty1\tx2\ty2\tcount
+     * @throws IOException if the file can not be written
+     */
+    public void writeUsage(String file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            for(int v = 0; v < index.size(); v++) {
+                for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                    if(usage[e] == 0.0) {
+                        continue;
+                    }
+                    Point<Double> from = index.getNode(v);
+                    Point<Double> to = index.getNode(index.target(e));
+                    out.println(from.first() + "\t" + from.second() + "\t"
+                            + to.first() + "\t" + to.second() + "\t" + usage[e]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the walkway usage of the default campus map to the file named by args[0].
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: PathUsage outputFile");
+            System.exit(1);
+        }
+        PathUsage usage = new CampusData().getPathUsage();
+        usage.writeUsage(args[0]);
+    }
+
+}
@@ -0,0 +1,40 @@
+import java.util.Set;
+
+/**
+ *
+ * The read operations shared by Graph and the snapshots of a VersionedGraph,
+ * so searches and indexes can be built from either.
+ *
+ */
+public interface ReadableGraph<N,E> {
+
+    /**
+     * 
+     * @return set containing names of all the nodes in the graph
+     */
+    public Set<N> getNodes();
+    
+    /**
+     * 
+     * @param nodeVal Label of node to get children of
+     * @return set of node names of children of nodeVal
+     * @throws IllegalArgumentException if there is no node in 
+            the graph with nodeVal
+     */
+    public Set<N> getChildren(N nodeVal);
+    
+    /** 
+        @param node1 label of first node
+        @param node2 label of second node
+        @returns set of edge labels from node1 to node2 in the graph
+        @throws IllegalArgumentException if node1 or node2 are not in the graph
+    */
+    public Set<E> getEdges(N node1, N node2);
+    
+    /**
+     * 
+     * @return number of nodes in the graph
+     */
+    public int size();
+    
+}
@@ -0,0 +1,326 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ * Checks that routes written by RouteEncoder read back from RouteDecoder as they
+ * were written, to within the rounding of the format. Run with assertions
+ * enabled or not, a failed check throws an AssertionError either way:
+ *
+ *     java RouteCodecTest
+ *
+ */
+public class RouteCodecTest {
+
+    // Largest error rounding can put in a coordinate, distance or bearing
+    private static final double COORD_ERROR = 0.5 / RouteEncoder.COORD_SCALE + 1e-9;
+    private static final double DISTANCE_ERROR = 0.5 / RouteEncoder.DISTANCE_SCALE + 1e-9;
+    private static final double BEARING_ERROR = Math.PI / RouteEncoder.BEARING_SCALE + 1e-9;
+
+    public static void main(String[] args) throws IOException {
+        testRoute();
+        testErrors();
+        testNoPath();
+        testSingleNode();
+        testShortSegments();
+        testLongerThanBuffer();
+        testSkipSegments();
+        testBadVersion();
+        System.out.println("RouteCodecTest: all tests passed");
+    }
+
+    /**
+     * A route of a few segments in every direction reads back within rounding.
+     */
+    private static void testRoute() throws IOException {
+        List<Point<Double>> route = randomRoute(new Random(1), 12, 1.0, 200.0);
+        List<List<Point<Double>>> routes = roundTrip(single(route));
+        check(routes.size() == 1, "one route read back");
+        checkRoute(route, routes.get(0));
+    }
+
+    /**
+     * Each of the error results of getRoute reads back exactly.
+     */
+    private static void testErrors() throws IOException {
+        List<List<Point<Double>>> routes = new ArrayList<List<Point<Double>>>();
+        routes.add(single(new Point<Double>()));
+        routes.add(single(new Point<Double>(null,0.0)));
+        routes.add(single(new Point<Double>(0.0,null)));
+        List<List<Point<Double>>> read = roundTrip(routes);
+        check(read.size() == 3, "three errors read back");
+        for(int i = 0; i < 3; i++) {
+            check(sameError(routes.get(i), read.get(i)), "error " + i + " read back as " + read.get(i));
+        }
+    }
+
+    /**
+     * No path, an empty list, reads back as one.
+     */
+    private static void testNoPath() throws IOException {
+        List<List<Point<Double>>> routes = new ArrayList<List<Point<Double>>>();
+        routes.add(new ArrayList<Point<Double>>());
+        List<List<Point<Double>>> read = roundTrip(routes);
+        check(read.size() == 1 && read.get(0).isEmpty(), "no path read back as " + read);
+
+        RouteDecoder decoder = new RouteDecoder(encode(routes));
+        check(decoder.nextRoute(), "no path is a route in the stream");
+        check(decoder.getStatus() == RouteEncoder.NO_PATH, "no path status");
+        check(!decoder.nextSegment(), "no path has no segments");
+        check(!decoder.nextRoute(), "stream ends after no path");
+    }
+
+    /**
+     * A route from a building to itself, of no segments, keeps its one point.
+     */
+    private static void testSingleNode() throws IOException {
+        List<Point<Double>> route = new ArrayList<Point<Double>>();
+        route.add(new Point<Double>(1873.4567, 204.00501));
+        route.add(new Point<Double>(0.0,null));
+        List<Point<Double>> read = roundTrip(single(route)).get(0);
+        checkRoute(route, read);
+
+        RouteDecoder decoder = new RouteDecoder(encode(single(route)));
+        check(decoder.nextRoute(), "single node route in the stream");
+        check(decoder.getStatus() == RouteEncoder.ROUTE, "single node status");
+        check(decoder.getSegmentCount() == 0, "single node has no segments");
+        check(!decoder.nextSegment(), "single node segments");
+    }
+
+    /**
+     * Segments shorter than the rounding of coordinates, and ones of no length,
+     * keep the bearings they were written with.
+     */
+    private static void testShortSegments() throws IOException {
+        List<Point<Double>> route = new ArrayList<Point<Double>>();
+        double x = 100.0;
+        double y = 100.0;
+        route.add(new Point<Double>(x, y));
+        double[][] steps = { {0.004, 0.003}, {0.0, 0.0}, {-0.002, 0.0049},
+                {0.013, -0.006}, {0.0, 0.0}, {-0.0001, -0.0001} };
+        double total = 0.0;
+        for(double[] step : steps) {
+            double length = Math.hypot(step[0], step[1]);
+            // getRoute gives atan2(0, 0), 0, for a segment of no length
+            route.add(new Point<Double>(length, Math.atan2(step[1], step[0])));
+            x += step[0];
+            y += step[1];
+            route.add(new Point<Double>(x, y));
+            total += length;
+        }
+        route.add(new Point<Double>(total,null));
+        checkRoute(route, roundTrip(single(route)).get(0));
+    }
+
+    /**
+     * Streams longer than the buffers of the encoder and decoder read back,
+     * however the input stream splits them up.
+     */
+    private static void testLongerThanBuffer() throws IOException {
+        Random random = new Random(2);
+        List<List<Point<Double>>> routes = new ArrayList<List<Point<Double>>>();
+        routes.add(randomRoute(random, 2000, 0.01, 5000.0));
+        for(int i = 0; i < 200; i++) {
+            switch(random.nextInt(4)) {
+                case 0:
+                    routes.add(new ArrayList<Point<Double>>());
+                    break;
+                case 1:
+                    routes.add(single(new Point<Double>(null,0.0)));
+                    break;
+                default:
+                    routes.add(randomRoute(random, random.nextInt(40), 0.01, 500.0));
+                    break;
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RouteEncoder encoder = new RouteEncoder(bytes);
+        for(List<Point<Double>> route : routes) {
+            encoder.write(route);
+        }
+        encoder.close();
+        check(bytes.size() > 3 * 4096, "stream is longer than the buffers, " + bytes.size());
+
+        for(int chunk : new int[] {1, 7, 4096, Integer.MAX_VALUE}) {
+            RouteDecoder decoder = new RouteDecoder(new ChunkedStream(bytes.toByteArray(), chunk));
+            for(List<Point<Double>> route : routes) {
+                List<Point<Double>> read = decoder.readRoute();
+                check(read != null, "route missing, read " + chunk + " bytes at a time");
+                if(route.size() > 1) {
+                    checkRoute(route, read);
+                } else {
+                    check(route.isEmpty() ? read.isEmpty() : sameError(route, read), "route " + route + " read back as " + read);
+                }
+            }
+            check(decoder.readRoute() == null, "stream ends after the last route");
+        }
+    }
+
+    /**
+     * Moving to the next route skips the segments of the current one not yet read.
+     */
+    private static void testSkipSegments() throws IOException {
+        Random random = new Random(3);
+        List<Point<Double>> first = randomRoute(random, 30, 1.0, 100.0);
+        List<Point<Double>> second = randomRoute(random, 5, 1.0, 100.0);
+        List<List<Point<Double>>> routes = new ArrayList<List<Point<Double>>>();
+        routes.add(first);
+        routes.add(second);
+        RouteDecoder decoder = new RouteDecoder(encode(routes));
+        check(decoder.nextRoute() && decoder.nextSegment(), "first segment of first route");
+        check(decoder.nextRoute(), "second route after skipping");
+        check(decoder.getSegmentCount() == 5, "second route has its own segments");
+        check(Math.abs(decoder.getX() - second.get(0).first()) <= COORD_ERROR
+                && Math.abs(decoder.getY() - second.get(0).second()) <= COORD_ERROR,
+                "second route starts where it was written");
+    }
+
+    /**
+     * A stream not written by this version of the encoder is refused.
+     */
+    private static void testBadVersion() throws IOException {
+        try {
+            new RouteDecoder(new ByteArrayInputStream(new byte[] {RouteEncoder.VERSION - 1}));
+            check(false, "older version accepted");
+        } catch(IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * @effects throws an AssertionError with message unless condition
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * @return true iff a and b are the same error result, of one point whose
+     *     coordinates may be null
+     */
+    private static boolean sameError(List<Point<Double>> a, List<Point<Double>> b) {
+        return a.size() == 1 && b.size() == 1
+                && same(a.get(0).first(), b.get(0).first())
+                && same(a.get(0).second(), b.get(0).second());
+    }
+
+    private static boolean same(Double a, Double b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * @effects checks that read is written to within the rounding of the format
+     */
+    private static void checkRoute(List<Point<Double>> written, List<Point<Double>> read) {
+        check(read.size() == written.size(), "route of " + written.size()
+                + " entries read back as " + read.size());
+        int last = written.size() - 1;
+        for(int i = 0; i < last; i += 2) {
+            Point<Double> a = written.get(i);
+            Point<Double> b = read.get(i);
+            check(Math.abs(a.first() - b.first()) <= COORD_ERROR
+                    && Math.abs(a.second() - b.second()) <= COORD_ERROR,
+                    "point " + a + " read back as " + b);
+        }
+        for(int i = 1; i < last; i += 2) {
+            Point<Double> a = written.get(i);
+            Point<Double> b = read.get(i);
+            check(Math.abs(a.first() - b.first()) <= DISTANCE_ERROR,
+                    "distance " + a.first() + " read back as " + b.first());
+            check(b.second() > -Math.PI && b.second() <= Math.PI,
+                    "bearing " + b.second() + " out of range");
+            // Bearings either side of west are close but differ by a whole turn
+            double turn = Math.abs(a.second() - b.second());
+            check(Math.min(turn, 2 * Math.PI - turn) <= BEARING_ERROR,
+                    "bearing " + a.second() + " read back as " + b.second());
+        }
+        check(Math.abs(written.get(last).first() - read.get(last).first()) <= DISTANCE_ERROR
+                && read.get(last).second() == null,
+                "total " + written.get(last) + " read back as " + read.get(last));
+    }
+
+    /**
+     * @return a route in the form returned by getRoute of the given number of
+     *     segments, each of a random length between shortest and longest
+     */
+    private static List<Point<Double>> randomRoute(Random random, int segments,
+            double shortest, double longest) {
+        List<Point<Double>> route = new ArrayList<Point<Double>>();
+        double x = random.nextDouble() * 4000.0;
+        double y = random.nextDouble() * 4000.0;
+        route.add(new Point<Double>(x, y));
+        double total = 0.0;
+        for(int i = 0; i < segments; i++) {
+            double length = shortest + random.nextDouble() * (longest - shortest);
+            double angle = (random.nextDouble() * 2 - 1) * Math.PI;
+            x += length * Math.cos(angle);
+            y += length * Math.sin(angle);
+            route.add(new Point<Double>(length, angle));
+            route.add(new Point<Double>(x, y));
+            total += length;
+        }
+        route.add(new Point<Double>(total,null));
+        return route;
+    }
+
+    private static <T> List<T> single(T item) {
+        List<T> list = new ArrayList<T>();
+        list.add(item);
+        return list;
+    }
+
+    /**
+     * @return stream holding routes as written by a RouteEncoder
+     */
+    private static InputStream encode(List<List<Point<Double>>> routes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RouteEncoder encoder = new RouteEncoder(bytes);
+        for(List<Point<Double>> route : routes) {
+            encoder.write(route);
+        }
+        encoder.close();
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    /**
+     * @return routes written by a RouteEncoder then read back by a RouteDecoder
+     */
+    private static List<List<Point<Double>>> roundTrip(List<List<Point<Double>>> routes)
+            throws IOException {
+        RouteDecoder decoder = new RouteDecoder(encode(routes));
+        List<List<Point<Double>>> read = new ArrayList<List<Point<Double>>>();
+        for(List<Point<Double>> route = decoder.readRoute(); route != null;
+                route = decoder.readRoute()) {
+            read.add(route);
+        }
+        decoder.close();
+        return read;
+    }
+
+    /**
+     * Stream returning at most a fixed number of bytes from each read.
+     */
+    private static class ChunkedStream extends ByteArrayInputStream {
+
+        private final int chunk;
+
+        public ChunkedStream(byte[] bytes, int chunk) {
+            super(bytes);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Reads routes written by a RouteEncoder, one route and then one segment at a
+ * time. The accessors return primitives, so reading a route this way allocates
+ * nothing. readRoute builds the whole route in the form returned by
+ * CampusData.getRoute instead.
+ *
+ *     while(decoder.nextRoute()) {
+ *         if(decoder.getStatus() == RouteEncoder.ROUTE) {
+ *             draw from decoder.getX(), decoder.getY()
+ *             while(decoder.nextSegment()) {
+ *                 draw to decoder.getX(), decoder.getY()
+ *             }
+ *         }
+ *     }
+ *
+ */
+public class RouteDecoder {
+
+    // Representation:
+    // buffer[position..limit) holds bytes read from in but not yet decoded.
+    // remaining is the number of segments of the current route not yet read, and
+    // x and y the rounded coordinates of the last point read, in parts of a pixel.
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    private int status;
+    private int segments;
+    private int remaining;
+    private double total;
+    private long x, y;
+    private double distance;
+    private double bearing;
+
+    /**
+     * @param in stream to read from
+     * @effects Constructs a decoder reading from in
+     * @throws IOException if in can not be read or was not written by a RouteEncoder
+     */
+    public RouteDecoder(InputStream in) throws IOException {
+        this.in = in;
+        this.buffer = new byte[4096];
+        this.position = 0;
+        this.limit = 0;
+        int version = readByte();
+        if(version != RouteEncoder.VERSION) {
+            throw new IOException("Not a version " + RouteEncoder.VERSION + " route stream.");
+        }
+        this.status = -1;
+    }
+
+    /**
+     * @modifies this
+     * @effects moves to the next route, skipping any segments of the current one
+     *     not yet read. For a ROUTE the position is then its start.
+     * @return true iff there was another route
+     * @throws IOException if the stream can not be read or is malformed
+     */
+    public boolean nextRoute() throws IOException {
+        while(remaining > 0) {
+            nextSegment();
+        }
+        if(!fill()) {
+            return false;
+        }
+        status = readByte();
+        segments = 0;
+        remaining = 0;
+        total = 0.0;
+        x = 0;
+        y = 0;
+        distance = 0.0;
+        bearing = 0.0;
+        if(status == RouteEncoder.ROUTE) {
+            segments = (int)readVarLong();
+            remaining = segments;
+            total = readVarLong() / RouteEncoder.DISTANCE_SCALE;
+            x = unzigzag(readVarLong());
+            y = unzigzag(readVarLong());
+        } else if(status < 0 || status > RouteEncoder.UNKNOWN_BOTH) {
+            throw new IOException("Malformed route stream.");
+        }
+        return true;
+    }
+
+    /**
+     * @modifies this
+     * @effects moves to the end of the next segment of the current route
+     * @return true iff the current route had another segment
+     * @throws IOException if the stream can not be read or is malformed
+     */
+    public boolean nextSegment() throws IOException {
+        if(remaining == 0) {
+            return false;
+        }
+        long dx = unzigzag(readVarLong());
+        long dy = unzigzag(readVarLong());
+        distance = readVarLong() / RouteEncoder.DISTANCE_SCALE;
+        long turns = readVarLong();
+        if(turns >= RouteEncoder.BEARING_SCALE) {
+            throw new IOException("Malformed route stream.");
+        }
+        // Back into the range of atan2, as getRoute gives them
+        if(turns > RouteEncoder.BEARING_SCALE / 2) {
+            turns -= RouteEncoder.BEARING_SCALE;
+        }
+        bearing = turns * (2 * Math.PI) / RouteEncoder.BEARING_SCALE;
+        x += dx;
+        y += dy;
+        remaining = remaining - 1;
+        return true;
+    }
+
+    /**
+     * @return status of the current route, one of the statuses of RouteEncoder
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return number of segments of the current route
+     */
+    public int getSegmentCount() {
+        return segments;
+    }
+
+    /**
+     * @return total cost of the current route
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * @return x coordinate of the current point
+     */
+    public double getX() {
+        return x / RouteEncoder.COORD_SCALE;
+    }
+
+    /**
+     * @return y coordinate of the current point
+     */
+    public double getY() {
+        return y / RouteEncoder.COORD_SCALE;
+    }
+
+    /**
+     * @return distance of the segment ending at the current point
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return direction of the segment ending at the current point, as in getRoute,
+     *     to within half of a BEARING_SCALE part of a turn
+     */
+    public double getBearing() {
+        return bearing;
+    }
+
+    /**
+     * @modifies this
+     * @return the next route in the form returned by CampusData.getRoute,
+     *     or null if there are no more
+     * @throws IOException if the stream can not be read or is malformed
+     */
+    public List<Point<Double>> readRoute() throws IOException {
+        if(!nextRoute()) {
+            return null;
+        }
+        List<Point<Double>> route = new ArrayList<Point<Double>>();
+        switch(status) {
+            case RouteEncoder.UNKNOWN_BOTH:
+                route.add(new Point<Double>());
+                break;
+            case RouteEncoder.UNKNOWN_START:
+                route.add(new Point<Double>(null,0.0));
+                break;
+            case RouteEncoder.UNKNOWN_DEST:
+                route.add(new Point<Double>(0.0,null));
+                break;
+            case RouteEncoder.ROUTE:
+                route.add(new Point<Double>(getX(), getY()));
+                while(nextSegment()) {
+                    route.add(new Point<Double>(distance, bearing));
+                    route.add(new Point<Double>(getX(), getY()));
+                }
+                route.add(new Point<Double>(total,null));
+                break;
+            default:
+                break;
+        }
+        return route;
+    }
+
+    /**
+     * @effects closes the stream
+     * @throws IOException if the stream can not be closed
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return value with its sign moved back from the lowest bit
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @effects reads more of the stream if the buffer is empty
+     * @return false iff the stream has ended
+     */
+    private boolean fill() throws IOException {
+        while(position == limit) {
+            int read = in.read(buffer, 0, buffer.length);
+            if(read < 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+        }
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        if(!fill()) {
+            throw new EOFException("Route stream ended part way through a route.");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * @return the next unsigned varint in the stream
+     */
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while(true) {
+            int b = readByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if(shift > 63) {
+                throw new IOException("Malformed varint in route stream.");
+            }
+        }
+    }
+
+}
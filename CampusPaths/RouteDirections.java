@@ -0,0 +1,202 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * Turns a route produced by CampusData.getRoute into turn-by-turn directions.
+ * Consecutive segments whose bearings are within a tolerance of each other are
+ * merged into a single Direction, so a route of hundreds of short segments reads
+ * as a handful of instructions. Directions are produced lazily, one leg per call
+ * to next().
+ *
+ */
+public class RouteDirections implements Iterator<Direction> {
+
+    // Representation:
+    // route is a list in the form returned by CampusData.getRoute,
+    // [(x0,y0),(d0,a0),(x1,y1),(d1,a1), ... (xn,yn),(total,null)]
+    // segment is the index of the next route segment not yet merged into a Direction.
+
+    // Abstraction function:
+    // The remaining directions are the legs formed by merging segments
+    // segment...count-1 of route. lastHeading is the heading of the last
+    // Direction returned, or NaN if none has been returned yet, and walked is
+    // the total distance covered by the Directions returned so far.
+
+    // Default largest change in bearing, in degrees, that still counts as
+    // walking straight ahead.
+    public static final double DEFAULT_TOLERANCE = 20.0;
+
+    private final List<Point<Double>> route;
+    private final double tolerance;
+    private final int count;
+    private int segment;
+    private double lastHeading;
+    private double walked;
+
+    /**
+     * @param route route in the form returned by CampusData.getRoute
+     * @effects Constructs directions for route using DEFAULT_TOLERANCE
+     */
+    public RouteDirections(List<Point<Double>> route) {
+        this(route, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * @param route route in the form returned by CampusData.getRoute
+     * @param tolerance largest change of bearing in degrees for which two
+     *     consecutive segments are merged into one Direction
+     * @requires tolerance >= 0
+     * @effects Constructs directions for route. If route is one of the
+     *     error results of getRoute (an unknown building, or no path) there
+     *     are no directions.
+     */
+    public RouteDirections(List<Point<Double>> route, double tolerance) {
+        this.route = route;
+        this.tolerance = tolerance;
+        this.segment = 0;
+        this.lastHeading = Double.NaN;
+        this.walked = 0.0;
+
+        // A complete route has an even number of points and ends with the total cost.
+        if(route.size() < 2 || route.size() % 2 != 0
+                || route.get(route.size() - 1).second() != null
+                || route.get(0).first() == null) {
+            this.count = 0;
+        } else {
+            this.count = route.size() / 2 - 1;
+        }
+    }
+
+    /**
+     * @return true iff there is at least one more Direction in the route
+     */
+    @Override
+    public boolean hasNext() {
+        return segment < count;
+    }
+
+    /**
+     * @modifies this
+     * @return the next Direction, merging as many following segments
+     *     into it as stay within the tolerance of its heading
+     * @throws NoSuchElementException if there are no more directions
+     */
+    @Override
+    public Direction next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException("No more directions in the route.");
+        }
+
+        Point<Double> start = route.get(2 * segment);
+        double distance = route.get(2 * segment + 1).first();
+        double heading = toHeading(route.get(2 * segment + 1).second());
+
+        // Running displacement of the leg, used to keep the heading of the
+        // leg from drifting when a path curves gently.
+        Point<Double> end = route.get(2 * segment + 2);
+        double dx = end.first() - start.first();
+        double dy = end.second() - start.second();
+        int merged = 1;
+        segment = segment + 1;
+
+        while(segment < count) {
+            Point<Double> info = route.get(2 * segment + 1);
+            Point<Double> next = route.get(2 * segment + 2);
+
+            // Zero length segments have no meaningful bearing, always merge them
+            boolean zeroLength = info.first() == 0.0
+                    || (next.first().equals(end.first()) && next.second().equals(end.second()));
+            if(!zeroLength && Math.abs(turnAngle(heading, toHeading(info.second()))) > tolerance) {
+                break;
+            }
+
+            distance += info.first();
+            dx += next.first() - end.first();
+            dy += next.second() - end.second();
+            if(dx != 0.0 || dy != 0.0) {
+                heading = toHeading(Math.atan2(dy, dx));
+            }
+            end = next;
+            merged = merged + 1;
+            segment = segment + 1;
+        }
+
+        String turn;
+        if(Double.isNaN(lastHeading)) {
+            turn = "Start";
+        } else {
+            turn = turnName(turnAngle(lastHeading, heading));
+        }
+        lastHeading = heading;
+        walked += distance;
+
+        return new Direction(turn, heading, distance, walked, merged, start, end);
+    }
+
+    /**
+     * Directions can not be removed from a route.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Directions can not be removed.");
+    }
+
+    /**
+     * @param angle angle in radians as returned by getRoute, measured from east
+     *     with y increasing down the map
+     * @return compass heading in degrees clockwise from north, in [0,360)
+     */
+    public static double toHeading(double angle) {
+        double heading = Math.toDegrees(angle) + 90.0;
+        heading = heading % 360.0;
+        if(heading < 0) {
+            heading += 360.0;
+        }
+        // -0.0 and rounding can leave heading at exactly 360
+        if(heading >= 360.0) {
+            heading = 0.0;
+        }
+        return heading;
+    }
+
+    /**
+     * @param from heading in degrees before the turn
+     * @param to heading in degrees after the turn
+     * @return the signed change of heading in (-180,180], positive to the right
+     */
+    public static double turnAngle(double from, double to) {
+        double delta = (to - from) % 360.0;
+        if(delta <= -180.0) {
+            delta += 360.0;
+        } else if(delta > 180.0) {
+            delta -= 360.0;
+        }
+        return delta;
+    }
+
+    /**
+     * @param delta signed change of heading in degrees, positive to the right
+     * @return instruction describing the turn
+     */
+    private String turnName(double delta) {
+        String side = delta > 0 ? "right" : "left";
+        double size = Math.abs(delta);
+        if(size <= tolerance) {
+            return "Continue";
+        }
+        if(size <= 60.0) {
+            return "Bear " + side;
+        }
+        if(size <= 135.0) {
+            return "Turn " + side;
+        }
+        if(size <= 165.0) {
+            return "Make a sharp " + side;
+        }
+        return "Turn around";
+    }
+
+}
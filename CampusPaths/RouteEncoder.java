@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ *
+ * Writes routes returned by CampusData.getRoute to a stream in a compact binary
+ * form, read back by RouteDecoder. Coordinates are rounded to COORD_SCALE parts of
+ * a pixel and each point is stored as the difference from the one before, and
+ * distances are rounded to DISTANCE_SCALE parts of a foot, all as variable length
+ * integers. Bearings are rounded to BEARING_SCALE parts of a turn and stored
+ * too, as working them out from rounded coordinates would be far off on short
+ * segments and undefined on ones of no length, so a segment usually takes about
+ * eight bytes. Routes are written into a buffer that is reused, so writing a
+ * route allocates nothing.
+ *
+ */
+public class RouteEncoder {
+
+    // Stream format, all integers are varints, signed ones zigzag encoded:
+    // byte version, then per route: byte status, and for a ROUTE: segment count,
+    // total cost * DISTANCE_SCALE, start x and y * COORD_SCALE (signed), then per
+    // segment the change in x and y * COORD_SCALE (signed), the distance
+    // * DISTANCE_SCALE and the bearing in parts of a turn, from 0 to BEARING_SCALE.
+
+    public static final int VERSION = 2;
+
+    // Parts of a pixel coordinates are rounded to
+    public static final double COORD_SCALE = 100.0;
+    // Parts of a foot distances are rounded to
+    public static final double DISTANCE_SCALE = 100.0;
+    // Parts of a turn bearings are rounded to
+    public static final int BEARING_SCALE = 65536;
+
+    // Status of a route, matching the results of CampusData.getRoute
+    public static final int ROUTE = 0;
+    public static final int NO_PATH = 1;
+    public static final int UNKNOWN_START = 2;
+    public static final int UNKNOWN_DEST = 3;
+    public static final int UNKNOWN_BOTH = 4;
+
+    // Longest a varint can be
+    private static final int MAX_VARINT = 10;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    /**
+     * @param out stream to write to
+     * @effects Constructs an encoder writing to out
+     * @throws IOException if out can not be written
+     */
+    public RouteEncoder(OutputStream out) throws IOException {
+        this.out = out;
+        this.buffer = new byte[4096];
+        this.position = 0;
+        buffer[position++] = VERSION;
+    }
+
+    /**
+     * @param route route in the form returned by CampusData.getRoute
+     * @modifies this
+     * @effects writes route to the stream, rounding coordinates and distances
+     * @throws IOException if the stream can not be written
+     */
+    public void write(List<Point<Double>> route) throws IOException {
+        if(route.isEmpty()) {
+            writeStatus(NO_PATH);
+            return;
+        }
+        if(route.size() == 1) {
+            Point<Double> error = route.get(0);
+            if(error.first() == null && error.second() == null) {
+                writeStatus(UNKNOWN_BOTH);
+            } else if(error.first() == null) {
+                writeStatus(UNKNOWN_START);
+            } else {
+                writeStatus(UNKNOWN_DEST);
+            }
+            return;
+        }
+
+        int segments = route.size() / 2 - 1;
+        writeStatus(ROUTE);
+        writeVarLong(segments);
+        writeVarLong(Math.round(route.get(route.size() - 1).first() * DISTANCE_SCALE));
+        long x = Math.round(route.get(0).first() * COORD_SCALE);
+        long y = Math.round(route.get(0).second() * COORD_SCALE);
+        writeVarLong(zigzag(x));
+        writeVarLong(zigzag(y));
+        for(int i = 0; i < segments; i++) {
+            Point<Double> next = route.get(2 * i + 2);
+            long nextX = Math.round(next.first() * COORD_SCALE);
+            long nextY = Math.round(next.second() * COORD_SCALE);
+            writeVarLong(zigzag(nextX - x));
+            writeVarLong(zigzag(nextY - y));
+            Point<Double> segment = route.get(2 * i + 1);
+            writeVarLong(Math.round(segment.first() * DISTANCE_SCALE));
+            writeVarLong(turns(segment.second()));
+            x = nextX;
+            y = nextY;
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects writes everything buffered to the stream and flushes it
+     * @throws IOException if the stream can not be written
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    /**
+     * @modifies this
+     * @effects flushes and closes the stream
+     * @throws IOException if the stream can not be written
+     */
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return value with its sign moved to the lowest bit
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @return bearing in radians rounded to parts of a turn, from 0 to BEARING_SCALE
+     */
+    static long turns(double bearing) {
+        long turns = Math.round(bearing / (2 * Math.PI) * BEARING_SCALE) % BEARING_SCALE;
+        return turns < 0 ? turns + BEARING_SCALE : turns;
+    }
+
+    private void writeStatus(int status) throws IOException {
+        if(position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte)status;
+    }
+
+    /**
+     * @effects buffers value as an unsigned varint, seven bits per byte
+     */
+    private void writeVarLong(long value) throws IOException {
+        if(buffer.length - position < MAX_VARINT) {
+            drain();
+        }
+        while((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte)value;
+    }
+
+    /**
+     * @effects writes the buffer to the stream and empties it
+     */
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+}
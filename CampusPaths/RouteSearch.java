@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * Shortest path searches over a GraphIndex. Point to point searches are A*
+ * guided by the lower bounds of a LandmarkTable, or plain Dijkstra when there is
+ * no table. Each thread reuses its own search arrays, marking entries with the
+ * number of the query that wrote them, so a query only touches the nodes it
+ * visits and no setup proportional to the size of the map is needed.
+ *
+ */
+public class RouteSearch {
+
+    // Representation:
+    // index is the map searched and landmarks its lower bounds, or null.
+    // workspace holds the search arrays of each thread.
+
+    private final GraphIndex index;
+    private final LandmarkTable landmarks;
+    private final ThreadLocal<Workspace> workspace;
+
+    /**
+     * Search arrays of one thread. An entry of dist, parent and bound is
+     * only valid for the current query if seen holds the query number.
+     */
+    private static class Workspace {
+        private final double[] dist;
+        private final double[] bound;
+        private final int[] parent;
+        private final int[] seen;
+        private final MinHeap heap;
+        private int query;
+        private int settled;
+
+        private Workspace(int size) {
+            dist = new double[size];
+            bound = new double[size];
+            parent = new int[size];
+            seen = new int[size];
+            heap = new MinHeap();
+            query = 0;
+            settled = 0;
+        }
+    }
+
+    /**
+     * @param index map to search
+     * @param landmarks lower bounds for index, or null to search without them
+     * @requires landmarks is null or landmarks.matches(index)
+     * @effects Constructs a search over index
+     */
+    public RouteSearch(GraphIndex index, LandmarkTable landmarks) {
+        this.index = index;
+        this.landmarks = landmarks;
+        final int size = index.size();
+        this.workspace = new ThreadLocal<Workspace>() {
+            @Override
+            protected Workspace initialValue() {
+                return new Workspace(size);
+            }
+        };
+    }
+
+    /**
+     * @return the map searched
+     */
+    public GraphIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the lower bounds guiding the search, or null if there are none
+     */
+    public LandmarkTable getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * @param start coordinates of node to start at
+     * @param dest coordinates of node to end at
+     * @return coordinates of the nodes on a shortest path from start to dest in order,
+     *     including both, or an empty list if either is not a node or there is no path
+     */
+    public List<Point<Double>> findPath(Point<Double> start, Point<Double> dest) {
+        List<Point<Double>> path = new ArrayList<Point<Double>>();
+        int s = index.indexOf(start);
+        int t = index.indexOf(dest);
+        if(s < 0 || t < 0) {
+            return path;
+        }
+        int[] nodes = findPath(s, t);
+        for(int node : nodes) {
+            path.add(index.getNode(node));
+        }
+        return path;
+    }
+
+    /**
+     * @param s number of node to start at
+     * @param t number of node to end at
+     * @return numbers of the nodes on a shortest path from s to t in order,
+     *     including both, or an empty array if there is no path
+     */
+    public int[] findPath(int s, int t) {
+        Workspace w = workspace.get();
+        w.query = w.query + 1;
+        if(w.query == 0) {
+            // Query numbers wrapped around, forget every old mark
+            Arrays.fill(w.seen, 0);
+            w.query = 1;
+        }
+        w.settled = 0;
+        MinHeap heap = w.heap;
+        heap.clear();
+
+        visit(w, s, 0.0, -1, t);
+        heap.push(s, w.bound[s]);
+
+        boolean found = false;
+        while(!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int v = heap.pop();
+            // Skip copies pushed before a shorter distance to v was found
+            if(key > w.dist[v] + w.bound[v]) {
+                continue;
+            }
+            w.settled = w.settled + 1;
+            if(v == t) {
+                found = true;
+                break;
+            }
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                int u = index.target(e);
+                double d = w.dist[v] + index.weight(e);
+                if(w.seen[u] != w.query || d < w.dist[u]) {
+                    visit(w, u, d, v, t);
+                    heap.push(u, d + w.bound[u]);
+                }
+            }
+        }
+
+        if(!found) {
+            return new int[0];
+        }
+        return pathTo(w, t);
+    }
+
+    /**
+     * Dijkstra's algorithm from s that stops once it has settled k of the targets.
+     *
+     * @param s number of node to start at
+     * @param targets numbers of the nodes to look for
+     * @param k most targets to find
+     * @return shortest paths from s to the k targets closest to s, closest first,
+     *     each as numbers of the nodes on it including both ends. Fewer if fewer
+     *     targets can be reached.
+     */
+    public List<int[]> findNearest(int s, BitSet targets, int k) {
+        List<int[]> paths = new ArrayList<int[]>();
+        if(k <= 0) {
+            return paths;
+        }
+        Workspace w = workspace.get();
+        w.query = w.query + 1;
+        if(w.query == 0) {
+            Arrays.fill(w.seen, 0);
+            w.query = 1;
+        }
+        w.settled = 0;
+        MinHeap heap = w.heap;
+        heap.clear();
+
+        // Several targets, so no landmark bound applies
+        reach(w, s, 0.0, -1);
+        heap.push(s, 0.0);
+        while(!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int v = heap.pop();
+            if(key > w.dist[v]) {
+                continue;
+            }
+            w.settled = w.settled + 1;
+            if(targets.get(v)) {
+                paths.add(pathTo(w, v));
+                if(paths.size() == k) {
+                    break;
+                }
+            }
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                int u = index.target(e);
+                double d = key + index.weight(e);
+                if(w.seen[u] != w.query || d < w.dist[u]) {
+                    reach(w, u, d, v);
+                    heap.push(u, d);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return numbers of the nodes on the path the current query of w found to t
+     */
+    private static int[] pathTo(Workspace w, int t) {
+        List<Integer> reversed = new ArrayList<Integer>();
+        int v = t;
+        while(v != -1) {
+            reversed.add(v);
+            v = w.parent[v];
+        }
+        Collections.reverse(reversed);
+        int[] path = new int[reversed.size()];
+        for(int i = 0; i < path.length; i++) {
+            path[i] = reversed.get(i);
+        }
+        return path;
+    }
+
+    /**
+     * @return number of nodes settled by the last findPath or findNearest of the calling thread
+     */
+    public int getSettled() {
+        return workspace.get().settled;
+    }
+
+    /**
+     * @modifies w
+     * @effects records that node v is reached at distance d from parent, with no bound
+     */
+    private static void reach(Workspace w, int v, double d, int parent) {
+        w.seen[v] = w.query;
+        w.bound[v] = 0.0;
+        w.dist[v] = d;
+        w.parent[v] = parent;
+    }
+
+    /**
+     * @modifies w
+     * @effects records that node v is reached at distance d from parent
+     */
+    private void visit(Workspace w, int v, double d, int parent, int t) {
+        if(w.seen[v] != w.query) {
+            w.seen[v] = w.query;
+            w.bound[v] = landmarks == null ? 0.0 : landmarks.lowerBound(v, t);
+        }
+        w.dist[v] = d;
+        w.parent[v] = parent;
+    }
+
+    /**
+     * @param index map to search
+     * @param source number of node to start at
+     * @return distance from source to every node, infinite where there is no path
+     */
+    public static double[] distances(GraphIndex index, int source) {
+        return distances(index, source, null);
+    }
+
+    /**
+     * Dijkstra's algorithm over the whole map.
+     *
+     * @param index map to search
+     * @param source number of node to start at
+     * @param parents array to fill with the node before each node on its shortest
+     *     path from source, -1 for source and unreachable nodes, or null
+     * @requires parents is null or parents.length == index.size()
+     * @modifies parents
+     * @return distance from source to every node, infinite where there is no path
+     */
+    public static double[] distances(GraphIndex index, int source, int[] parents) {
+        double[] dist = new double[index.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        if(parents != null) {
+            Arrays.fill(parents, -1);
+        }
+        MinHeap heap = new MinHeap();
+        dist[source] = 0.0;
+        heap.push(source, 0.0);
+        while(!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int v = heap.pop();
+            if(key > dist[v]) {
+                continue;
+            }
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                int u = index.target(e);
+                double d = key + index.weight(e);
+                if(d < dist[u]) {
+                    dist[u] = d;
+                    if(parents != null) {
+                        parents[u] = v;
+                    }
+                    heap.push(u, d);
+                }
+            }
+        }
+        return dist;
+    }
+
+}
@@ -0,0 +1,278 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ * A recorded or generated sequence of route queries. Each query has the time it
+ * was made, the buildings it was between, how long it took and whether its route
+ * came from the route cache. Traces are stored in a compact binary file where
+ * every number is a variable length integer and times are stored as deltas.
+ *
+ */
+public class RouteTrace {
+
+    // Representation:
+    // names holds the short names of the buildings. Query i was made times[i]
+    // nanoseconds after the start of the trace, from building names[starts[i]]
+    // to building names[dests[i]], took latencies[i] nanoseconds and hits[i]
+    // is true iff it was answered from the cache. A building id of -1 is a
+    // name that was not a building.
+
+    // File format, all integers are unsigned varints unless noted:
+    // int magic, int version (fixed 4 bytes each), name count, names (modified UTF-8),
+    // query count, then per query: zigzag delta of time in microseconds from the
+    // previous query, start id + 1, dest id + 1, latency in microseconds * 2 + hit.
+
+    private static final int MAGIC = 0x43505452;
+    private static final int VERSION = 1;
+
+    private final String[] names;
+    private final long[] times;
+    private final int[] starts;
+    private final int[] dests;
+    private final long[] latencies;
+    private final boolean[] hits;
+
+    /**
+     * @param names short names of the buildings
+     * @param times time of each query in nanoseconds from the start of the trace
+     * @param starts id of the start building of each query
+     * @param dests id of the destination building of each query
+     * @param latencies time taken by each query in nanoseconds
+     * @param hits whether each query was answered from the cache
+     * @requires all arrays but names to have the same length
+     * @effects Constructs a new trace holding the arrays passed
+     */
+    public RouteTrace(String[] names, long[] times, int[] starts, int[] dests,
+            long[] latencies, boolean[] hits) {
+        this.names = names;
+        this.times = times;
+        this.starts = starts;
+        this.dests = dests;
+        this.latencies = latencies;
+        this.hits = hits;
+        checkRep();
+    }
+
+    /**
+     * @return number of queries in the trace
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @param i index of a query
+     * @return time of query i in nanoseconds from the start of the trace
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    /**
+     * @param i index of a query
+     * @return short name of the start building of query i, or null if it was unknown
+     */
+    public String getStart(int i) {
+        return starts[i] < 0 ? null : names[starts[i]];
+    }
+
+    /**
+     * @param i index of a query
+     * @return short name of the destination building of query i, or null if it was unknown
+     */
+    public String getDest(int i) {
+        return dests[i] < 0 ? null : names[dests[i]];
+    }
+
+    /**
+     * @param i index of a query
+     * @return time taken by query i in nanoseconds
+     */
+    public long getLatency(int i) {
+        return latencies[i];
+    }
+
+    /**
+     * @param i index of a query
+     * @return true iff query i was answered from the cache
+     */
+    public boolean isHit(int i) {
+        return hits[i];
+    }
+
+    /**
+     * Generates a synthetic trace where the popularity of buildings follows a
+     * Zipf distribution, so a few buildings are the start or destination of
+     * most queries. Queries are spaced one millisecond apart.
+     *
+     * @param buildings short names of the buildings
+     * @param count number of queries to generate
+     * @param exponent Zipf exponent, 1.0 is typical
+     * @param seed seed of the random generator
+     * @requires buildings to contain at least two names, count >= 0, exponent >= 0
+     * @return a trace of count queries between different buildings
+     */
+    public static RouteTrace zipf(List<String> buildings, int count, double exponent, long seed) {
+        Random random = new Random(seed);
+        List<String> shuffled = new ArrayList<String>(buildings);
+        Collections.shuffle(shuffled, random);
+        String[] names = shuffled.toArray(new String[shuffled.size()]);
+
+        // Cumulative distribution where the building at rank k has weight 1/k^exponent
+        double[] cdf = new double[names.length];
+        double sum = 0.0;
+        for(int k = 0; k < names.length; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+
+        long[] times = new long[count];
+        int[] starts = new int[count];
+        int[] dests = new int[count];
+        for(int i = 0; i < count; i++) {
+            times[i] = i * 1000000L;
+            starts[i] = sample(cdf, random.nextDouble() * sum);
+            do {
+                dests[i] = sample(cdf, random.nextDouble() * sum);
+            } while(dests[i] == starts[i]);
+        }
+        return new RouteTrace(names, times, starts, dests, new long[count], new boolean[count]);
+    }
+
+    /**
+     * @return the smallest index k with cdf[k] > value
+     */
+    private static int sample(double[] cdf, double value) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(cdf[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param file file to write the trace to
+     * @effects writes this trace to file in the binary trace format
+     * @throws IOException if the file can not be written
+     */
+    public void write(String file) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVarLong(out, names.length);
+            for(String name : names) {
+                out.writeUTF(name);
+            }
+            writeVarLong(out, times.length);
+            long previous = 0;
+            for(int i = 0; i < times.length; i++) {
+                long micros = times[i] / 1000;
+                long delta = micros - previous;
+                previous = micros;
+                writeVarLong(out, (delta << 1) ^ (delta >> 63));
+                writeVarLong(out, starts[i] + 1);
+                writeVarLong(out, dests[i] + 1);
+                writeVarLong(out, (latencies[i] / 1000) * 2 + (hits[i] ? 1 : 0));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param file file holding a trace in the binary trace format
+     * @return the trace stored in file
+     * @throws IOException if the file can not be read or is not a trace file
+     */
+    public static RouteTrace read(String file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " route trace.");
+            }
+            String[] names = new String[(int)readVarLong(in)];
+            for(int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            int count = (int)readVarLong(in);
+            long[] times = new long[count];
+            int[] starts = new int[count];
+            int[] dests = new int[count];
+            long[] latencies = new long[count];
+            boolean[] hits = new boolean[count];
+            long micros = 0;
+            for(int i = 0; i < count; i++) {
+                long zigzag = readVarLong(in);
+                micros += (zigzag >>> 1) ^ -(zigzag & 1);
+                times[i] = micros * 1000;
+                starts[i] = (int)readVarLong(in) - 1;
+                dests[i] = (int)readVarLong(in) - 1;
+                long latency = readVarLong(in);
+                latencies[i] = (latency >>> 1) * 1000;
+                hits[i] = (latency & 1) == 1;
+            }
+            return new RouteTrace(names, times, starts, dests, latencies, hits);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @effects writes value to out as an unsigned varint, seven bits per byte
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    /**
+     * @return the next unsigned varint read from in
+     */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while(true) {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if(shift > 63) {
+                throw new IOException("Malformed varint in route trace.");
+            }
+        }
+    }
+
+    /**
+     * Checks the representation invariant
+     */
+    private void checkRep() {
+        assert(names != null);
+        assert(times.length == starts.length && times.length == dests.length);
+        assert(times.length == latencies.length && times.length == hits.length);
+    }
+
+}
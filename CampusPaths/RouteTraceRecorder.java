@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * Records route queries into a fixed size ring buffer without taking locks,
+ * so it can stay attached to CampusData.getRoute under load. When the buffer is
+ * full the oldest queries are overwritten. A snapshot of the buffer can be taken
+ * at any time and written out as a RouteTrace.
+ *
+ */
+public class RouteTraceRecorder {
+
+    // Representation:
+    // Query number n is stored in slot n & mask. Each slot takes FIELDS longs of
+    // records: the time of the query in nanoseconds since the recorder was made,
+    // the start and destination ids packed into one long, and the latency in
+    // nanoseconds times two plus one if the query was a cache hit.
+    // stamps[slot] is 2 * (n + 1) once query n has been stored in the slot, one
+    // more than that while query n is being written to it, and 0 while it has
+    // never been written. Writers claim a slot by compare and set of its stamp,
+    // so only one writes its records at a time, and stamps of a slot only grow.
+    // A writer never waits: one that finds the slot claimed drops its query.
+
+    // Abstraction function:
+    // The recorded queries are those of the last min(next, capacity) queries
+    // numbered next - 1 and below that are stored in their slots. A query whose
+    // slot was claimed by another query, or was being written, when it came to
+    // be written is never stored.
+
+    private static final int FIELDS = 3;
+
+    private final String[] names;
+    private final Map<String,Integer> ids;
+    private final int mask;
+    private final long origin;
+    private final AtomicLong next;
+    private final AtomicLongArray stamps;
+    private final AtomicLongArray records;
+
+    /**
+     * @param buildings short names of the buildings that may be queried
+     * @param capacity most queries kept, rounded up to a power of two
+     * @requires capacity > 0
+     * @effects Constructs a new empty recorder
+     */
+    public RouteTraceRecorder(List<String> buildings, int capacity) {
+        names = buildings.toArray(new String[buildings.size()]);
+        ids = new HashMap<String,Integer>();
+        for(int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) {
+            size = size << 1;
+        }
+        mask = size - 1;
+        origin = System.nanoTime();
+        next = new AtomicLong(0);
+        stamps = new AtomicLongArray(size);
+        records = new AtomicLongArray(size * FIELDS);
+    }
+
+    /**
+     * @param start name of the start building of the query
+     * @param dest name of the destination building of the query
+     * @param begin value of System.nanoTime() when the query started
+     * @param latency time taken by the query in nanoseconds
+     * @param hit true iff the query was answered from the cache
+     * @modifies this
+     * @effects records the query, overwriting the oldest one if the buffer is full.
+     *     The query is dropped instead if its slot is being written by a query
+     *     a whole buffer older or newer.
+     */
+    public void record(String start, String dest, long begin, long latency, boolean hit) {
+        long number = next.getAndIncrement();
+        int slot = (int)(number & mask);
+        Integer startId = ids.get(start);
+        Integer destId = ids.get(dest);
+        long packed = ((long)(startId == null ? -1 : startId) << 32)
+                | ((destId == null ? -1 : destId) & 0xFFFFFFFFL);
+
+        // Claim the slot, marking it as being written so snapshots skip it. If a
+        // later query has it, or another writer holds it, drop this one rather
+        // than wait for the slot.
+        long stored = stored(number);
+        long stamp = stamps.get(slot);
+        if(stamp > stored || (stamp & 1) == 1 || !stamps.compareAndSet(slot, stamp, stored + 1)) {
+            return;
+        }
+        records.set(slot * FIELDS, begin - origin);
+        records.set(slot * FIELDS + 1, packed);
+        records.set(slot * FIELDS + 2, latency * 2 + (hit ? 1 : 0));
+        stamps.set(slot, stored);
+    }
+
+    /**
+     * @return stamp of a slot once query number has been stored in it
+     */
+    private static long stored(long number) {
+        return 2 * (number + 1);
+    }
+
+    /**
+     * @return number of queries recorded since the recorder was made,
+     *     including ones since overwritten
+     */
+    public long getCount() {
+        return next.get();
+    }
+
+    /**
+     * @return trace of the queries currently in the buffer, oldest first.
+     *     Queries being written while the snapshot is taken are left out.
+     */
+    public RouteTrace snapshot() {
+        long end = next.get();
+        long first = Math.max(0, end - (mask + 1));
+        int count = (int)(end - first);
+
+        long[] times = new long[count];
+        int[] starts = new int[count];
+        int[] dests = new int[count];
+        long[] latencies = new long[count];
+        boolean[] hits = new boolean[count];
+
+        int kept = 0;
+        for(long number = first; number < end; number++) {
+            int slot = (int)(number & mask);
+            long stamp = stored(number);
+            if(stamps.get(slot) != stamp) {
+                continue;
+            }
+            long time = records.get(slot * FIELDS);
+            long packed = records.get(slot * FIELDS + 1);
+            long latency = records.get(slot * FIELDS + 2);
+            // The slot was claimed by a later query while reading it
+            if(stamps.get(slot) != stamp) {
+                continue;
+            }
+            times[kept] = time;
+            starts[kept] = (int)(packed >> 32);
+            dests[kept] = (int)packed;
+            latencies[kept] = latency >>> 1;
+            hits[kept] = (latency & 1) == 1;
+            kept = kept + 1;
+        }
+
+        return new RouteTrace(names, Arrays.copyOf(times, kept),
+                Arrays.copyOf(starts, kept), Arrays.copyOf(dests, kept),
+                Arrays.copyOf(latencies, kept), Arrays.copyOf(hits, kept));
+    }
+
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Load generator that replays a RouteTrace against a local CampusData and
+ * reports throughput and latency percentiles. Queries are issued on a fixed
+ * schedule whether or not earlier ones have finished, and latency is measured
+ * from when a query was scheduled, so a slow query is not hidden by the
+ * queries queued behind it.
+ *
+ * Usage: RouteTraceReplay (traceFile | zipf:count) rate [threads]
+ * where rate is queries per second, or 0 to keep the timing of the trace.
+ *
+ */
+public class RouteTraceReplay {
+
+    // Queries of a synthetic trace and its Zipf exponent
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final long ZIPF_SEED = 331;
+
+    /**
+     * Replays a trace and prints a report to standard output.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length < 2) {
+            System.err.println("Usage: RouteTraceReplay (traceFile | zipf:count) rate [threads]");
+            System.exit(1);
+        }
+
+        CampusData data = new CampusData();
+
+        RouteTrace trace;
+        if(args[0].startsWith("zipf:")) {
+            int count = Integer.parseInt(args[0].substring("zipf:".length()));
+            trace = RouteTrace.zipf(data.getShortBuildings(), count, ZIPF_EXPONENT, ZIPF_SEED);
+        } else {
+            trace = RouteTrace.read(args[0]);
+        }
+        double rate = Double.parseDouble(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        replay(data, trace, rate, threads);
+    }
+
+    /**
+     * @param data campus to run the queries against
+     * @param trace queries to run
+     * @param rate queries per second, or 0 to schedule queries at their trace times
+     * @param threads number of threads issuing queries
+     * @requires rate >= 0, threads > 0
+     * @effects runs every query of trace against data and prints the throughput
+     *     and latency percentiles to standard output
+     */
+    public static void replay(final CampusData data, final RouteTrace trace, final double rate,
+            int threads) throws InterruptedException {
+        final int count = trace.size();
+        final long[] latencies = new long[count];
+        final AtomicInteger next = new AtomicInteger(0);
+        final long origin = trace.size() == 0 ? 0 : trace.getTime(0);
+        final long start = System.nanoTime();
+
+        /**
+         * Takes the next query off the trace, waits until it is due and runs it.
+         */
+        class Worker implements Runnable {
+            public void run() {
+                int i = next.getAndIncrement();
+                while(i < count) {
+                    long due;
+                    if(rate > 0) {
+                        due = start + (long)(i * 1e9 / rate);
+                    } else {
+                        due = start + trace.getTime(i) - origin;
+                    }
+                    long wait = due - System.nanoTime();
+                    while(wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        wait = due - System.nanoTime();
+                    }
+                    String from = trace.getStart(i);
+                    String to = trace.getDest(i);
+                    data.getRoute(from == null ? "" : from, to == null ? "" : to);
+                    latencies[i] = System.nanoTime() - due;
+                    i = next.getAndIncrement();
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for(int t = 0; t < threads; t++) {
+            pool.execute(new Worker());
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.println("queries:    " + count);
+        System.out.println("throughput: " + String.format("%.1f", count * 1e9 / elapsed) + " queries/s");
+        System.out.println("p50:        " + millis(percentile(latencies, 0.50)));
+        System.out.println("p90:        " + millis(percentile(latencies, 0.90)));
+        System.out.println("p99:        " + millis(percentile(latencies, 0.99)));
+        System.out.println("p99.9:      " + millis(percentile(latencies, 0.999)));
+        System.out.println("max:        " + millis(count == 0 ? 0 : latencies[count - 1]));
+    }
+
+    /**
+     * @param sorted latencies sorted in increasing order
+     * @param fraction fraction of latencies at or below the result
+     * @requires 0 <= fraction <= 1
+     * @return the latency at the given fraction using the nearest rank, or 0 if
+     *     there are no latencies
+     */
+    public static long percentile(long[] sorted, double fraction) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int)Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+
+    /**
+     * @return nanos formatted as milliseconds
+     */
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+}
@@ -0,0 +1,178 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Everything CampusData needs to answer route queries for one version of the
+ * campus paths: the array index of the paths, their analysis, the landmark
+ * guided search, and a cache of the routes found, if routes are cached at all.
+ * A query uses the tables it started with throughout, and tables are replaced
+ * as a whole when the paths are edited, so cached routes never outlive the
+ * version they were found on.
+ *
+ */
+public class RoutingTables {
+
+    // A route cache size to turn caching on with, and the size FootprintCheck
+    // budgets for
+    public static final int ROUTE_CACHE_SIZE = 256;
+
+    private final GraphVersion<Point<Double>,Double> paths;
+    private final GraphIndex index;
+    private final GraphAnalysis analysis;
+    private final RouteSearch search;
+
+    // The routeCacheSize most recently used routes, keyed by the pair of short
+    // names. Always empty if routeCacheSize is 0.
+    private final int routeCacheSize;
+    private final Map<Pair<String>,List<Point<Double>>> routeCache;
+
+    /**
+     * @param paths version of the paths index was built from
+     * @param index index of the paths
+     * @param landmarks landmark table for index, or null to search without one
+     * @param routeCacheSize most routes to cache, or 0 to cache none
+     * @requires landmarks is null or landmarks.matches(index), routeCacheSize >= 0
+     * @effects Constructs tables for index, analysing it
+     */
+    public RoutingTables(GraphVersion<Point<Double>,Double> paths, GraphIndex index,
+            LandmarkTable landmarks, int routeCacheSize) {
+        this.paths = paths;
+        this.index = index;
+        this.analysis = new GraphAnalysis(index);
+        this.search = new RouteSearch(index, landmarks);
+        this.routeCacheSize = routeCacheSize;
+        this.routeCache = routeCache(routeCacheSize);
+    }
+
+    /**
+     * @effects Constructs tables sharing the analysis of tables, searching with
+     *     landmarks, and sharing its route cache too if it is routeCacheSize long
+     */
+    private RoutingTables(RoutingTables tables, LandmarkTable landmarks, int routeCacheSize) {
+        this.paths = tables.paths;
+        this.index = tables.index;
+        this.analysis = tables.analysis;
+        this.search = new RouteSearch(index, landmarks);
+        this.routeCacheSize = routeCacheSize;
+        this.routeCache = routeCacheSize == tables.routeCacheSize
+                ? tables.routeCache : routeCache(routeCacheSize);
+    }
+
+    /**
+     * @return an empty route cache keeping the limit most recently used routes
+     */
+    private static Map<Pair<String>,List<Point<Double>>> routeCache(final int limit) {
+        // Access ordered so the least recently used route is evicted first
+        return new LinkedHashMap<Pair<String>,List<Point<Double>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair<String>,List<Point<Double>>> eldest) {
+                return size() > limit;
+            }
+        };
+    }
+
+    /**
+     * @param landmarks landmark table for the index of these tables
+     * @requires landmarks.matches(getIndex())
+     * @return tables for the same version of the paths searching with landmarks,
+     *     keeping the routes cached so far
+     */
+    public RoutingTables withLandmarks(LandmarkTable landmarks) {
+        return new RoutingTables(this, landmarks, routeCacheSize);
+    }
+
+    /**
+     * @param size most routes to cache, or 0 to cache none
+     * @requires size >= 0
+     * @return tables for the same version of the paths caching at most size
+     *     routes, keeping the routes cached so far only if size is unchanged
+     */
+    public RoutingTables withRouteCacheSize(int size) {
+        return new RoutingTables(this, search.getLandmarks(), size);
+    }
+
+    /**
+     * @return most routes these tables cache, 0 if they cache none
+     */
+    public int getRouteCacheSize() {
+        return routeCacheSize;
+    }
+
+    /**
+     * @return version of the paths these tables were built from
+     */
+    public long getVersion() {
+        return paths.getVersion();
+    }
+
+    /**
+     * @return the paths these tables were built from
+     */
+    public GraphVersion<Point<Double>,Double> getPaths() {
+        return paths;
+    }
+
+    /**
+     * @return index of the paths
+     */
+    public GraphIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return checks and connectivity of the paths
+     */
+    public GraphAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    /**
+     * @return search over the paths
+     */
+    public RouteSearch getSearch() {
+        return search;
+    }
+
+    /**
+     * @param key pair of short names of the start and destination buildings
+     * @return the cached route for key, or null if it is not cached.
+     *     The list must not be modified.
+     */
+    public List<Point<Double>> getCachedRoute(Pair<String> key) {
+        if(routeCacheSize == 0) {
+            return null;
+        }
+        synchronized(routeCache) {
+            return routeCache.get(key);
+        }
+    }
+
+    /**
+     * @param key pair of short names of the start and destination buildings
+     * @param route route between them, which must not be modified afterwards
+     * @modifies this
+     * @effects caches route for key, evicting the least recently used route if
+     *     full, unless these tables cache no routes
+     */
+    public void cacheRoute(Pair<String> key, List<Point<Double>> route) {
+        if(routeCacheSize == 0) {
+            return;
+        }
+        synchronized(routeCache) {
+            routeCache.put(key, route);
+        }
+    }
+
+    /**
+     * @return a copy of the route cache, in order of least recently used, whose
+     *     routes must not be modified
+     */
+    Map<Pair<String>,List<Point<Double>>> cachedRoutes() {
+        synchronized(routeCache) {
+            return new LinkedHashMap<Pair<String>,List<Point<Double>>>(routeCache);
+        }
+    }
+
+}
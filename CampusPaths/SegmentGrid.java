@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * A spatial index of the walkways of a map for finding the walkways near a point.
+ * The map is covered by a grid of square cells and each walkway is listed in
+ * every cell its bounding box overlaps. A walkway with edges in both directions
+ * is indexed once, by the edge from its lower numbered end.
+ *
+ */
+public class SegmentGrid {
+
+    // Representation:
+    // cells maps the cell (floor(x / cellSize), floor(y / cellSize)) to the
+    // numbers of the edges of index whose bounding box overlaps it.
+
+    private final GraphIndex index;
+    private final double cellSize;
+    private final Map<Pair<Integer>,int[]> cells;
+
+    /**
+     * @param index map to index
+     * @param cellSize width of a cell, about the search radius works best
+     * @requires cellSize > 0
+     * @effects Constructs an index of the walkways of index
+     */
+    public SegmentGrid(GraphIndex index, double cellSize) {
+        this.index = index;
+        this.cellSize = cellSize;
+
+        Map<Pair<Integer>,List<Integer>> lists = new HashMap<Pair<Integer>,List<Integer>>();
+        for(int v = 0; v < index.size(); v++) {
+            for(int e = index.edgeStart(v); e < index.edgeEnd(v); e++) {
+                int u = index.target(e);
+                // Index each two way walkway only once
+                if(u < v && index.findEdge(u, v) >= 0) {
+                    continue;
+                }
+                Point<Double> from = index.getNode(v);
+                Point<Double> to = index.getNode(u);
+                int x1 = cell(Math.min(from.first(), to.first()));
+                int x2 = cell(Math.max(from.first(), to.first()));
+                int y1 = cell(Math.min(from.second(), to.second()));
+                int y2 = cell(Math.max(from.second(), to.second()));
+                for(int x = x1; x <= x2; x++) {
+                    for(int y = y1; y <= y2; y++) {
+                        Pair<Integer> key = new Pair<Integer>(x, y);
+                        List<Integer> list = lists.get(key);
+                        if(list == null) {
+                            list = new ArrayList<Integer>();
+                            lists.put(key, list);
+                        }
+                        list.add(e);
+                    }
+                }
+            }
+        }
+
+        cells = new HashMap<Pair<Integer>,int[]>();
+        for(Map.Entry<Pair<Integer>,List<Integer>> entry : lists.entrySet()) {
+            int[] edges = new int[entry.getValue().size()];
+            for(int i = 0; i < edges.length; i++) {
+                edges[i] = entry.getValue().get(i);
+            }
+            cells.put(entry.getKey(), edges);
+        }
+    }
+
+    /**
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param radius largest distance from the point
+     * @return numbers of the edges within radius of (x,y), each listed once, in no
+     *     particular order
+     */
+    public int[] near(double x, double y, double radius) {
+        int x1 = cell(x - radius);
+        int x2 = cell(x + radius);
+        int y1 = cell(y - radius);
+        int y2 = cell(y + radius);
+        int[] found = new int[16];
+        int count = 0;
+        for(int cx = x1; cx <= x2; cx++) {
+            for(int cy = y1; cy <= y2; cy++) {
+                int[] edges = cells.get(new Pair<Integer>(cx, cy));
+                if(edges == null) {
+                    continue;
+                }
+                for(int e : edges) {
+                    if(distance(e, x, y) > radius) {
+                        continue;
+                    }
+                    boolean seen = false;
+                    for(int i = 0; i < count && !seen; i++) {
+                        seen = found[i] == e;
+                    }
+                    if(!seen) {
+                        if(count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count] = e;
+                        count = count + 1;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @param e number of an edge
+     * @param x x coordinate of a point
+     * @param y y coordinate of a point
+     * @return fraction of the way along edge e of the point on it closest to (x,y),
+     *     between 0 and 1
+     */
+    public double project(int e, double x, double y) {
+        Point<Double> from = index.getNode(index.source(e));
+        Point<Double> to = index.getNode(index.target(e));
+        double dx = to.first() - from.first();
+        double dy = to.second() - from.second();
+        double squared = dx * dx + dy * dy;
+        if(squared == 0.0) {
+            return 0.0;
+        }
+        double t = ((x - from.first()) * dx + (y - from.second()) * dy) / squared;
+        return Math.max(0.0, Math.min(1.0, t));
+    }
+
+    /**
+     * @param e number of an edge
+     * @param x x coordinate of a point
+     * @param y y coordinate of a point
+     * @return distance from (x,y) to the closest point on edge e
+     */
+    public double distance(int e, double x, double y) {
+        double t = project(e, x, y);
+        Point<Double> from = index.getNode(index.source(e));
+        Point<Double> to = index.getNode(index.target(e));
+        double px = from.first() + t * (to.first() - from.first());
+        double py = from.second() + t * (to.second() - from.second());
+        return Math.hypot(x - px, y - py);
+    }
+
+    /**
+     * @return the cell coordinate of c
+     */
+    private int cell(double c) {
+        return (int)Math.floor(c / cellSize);
+    }
+
+}
@@ -0,0 +1,97 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Times the phases of starting the application from the moment the timer
+ * was made, which should be the first thing main does. Only System.nanoTime
+ * is used, so timing loads no classes of its own. Controlled by system
+ * properties:
+ *
+ *     campuspaths.startup.report  print the times to standard error once interactive
+ *     campuspaths.startup.target  milliseconds allowed until interactive, default 2000
+ *     campuspaths.startup.check   exit once interactive, with status 1 if over target
+ *
+ */
+public class StartupTimer {
+
+    // Representation:
+    // phases[i] was marked marks[i] milliseconds after start, a value of
+    // System.nanoTime(). Synchronized on this, as phases are marked from
+    // several threads.
+
+    public static final String REPORT_PROPERTY = "campuspaths.startup.report";
+    public static final String TARGET_PROPERTY = "campuspaths.startup.target";
+    public static final String CHECK_PROPERTY = "campuspaths.startup.check";
+
+    // Time allowed until the application is interactive when no target is set
+    public static final long DEFAULT_TARGET_MILLIS = 2000;
+
+    private final long start;
+    private final List<String> phases;
+    private final List<Long> marks;
+
+    /**
+     * @effects Constructs a timer starting now with no phases marked
+     */
+    public StartupTimer() {
+        start = System.nanoTime();
+        phases = new ArrayList<String>();
+        marks = new ArrayList<Long>();
+    }
+
+    /**
+     * @param phase name of the phase that just finished
+     * @modifies this
+     * @effects records that phase finished now
+     */
+    public synchronized void mark(String phase) {
+        phases.add(phase);
+        marks.add((System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * @return milliseconds from the timer starting to the last phase marked,
+     *     or 0 if none has been
+     */
+    public synchronized long getElapsed() {
+        return marks.isEmpty() ? 0 : marks.get(marks.size() - 1);
+    }
+
+    /**
+     * @return milliseconds allowed until interactive, from TARGET_PROPERTY
+     */
+    public static long getTarget() {
+        return Long.getLong(TARGET_PROPERTY, DEFAULT_TARGET_MILLIS);
+    }
+
+    /**
+     * @param out stream to print to
+     * @effects prints when each phase finished and the total against the target
+     */
+    public synchronized void report(PrintStream out) {
+        for(int i = 0; i < phases.size(); i++) {
+            out.println("Startup: " + phases.get(i) + " at " + marks.get(i) + " ms");
+        }
+        long target = getTarget();
+        out.println("Startup: interactive after " + getElapsed() + " ms, target " + target
+                + " ms" + (getElapsed() > target ? ", OVER TARGET" : ""));
+    }
+
+    /**
+     * Called once the application is interactive, after the phase that made it
+     * so has been marked.
+     *
+     * @effects reports and exits as the system properties ask
+     */
+    public void finish() {
+        if(Boolean.getBoolean(REPORT_PROPERTY) || Boolean.getBoolean(CHECK_PROPERTY)) {
+            report(System.err);
+        }
+        if(Boolean.getBoolean(CHECK_PROPERTY)) {
+            System.exit(getElapsed() > getTarget() ? 1 : 0);
+        }
+    }
+
+}
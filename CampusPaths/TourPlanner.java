@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Finds a short order to visit a set of stops on a map, starting from the first.
+ * The distances between every pair of stops are found first, one search per stop
+ * run in parallel. A nearest neighbour tour is then improved by 2-opt, reversing
+ * a stretch of the tour, and Or-opt, moving up to MAX_SEGMENT consecutive stops
+ * elsewhere, until neither helps or the time budget runs out. Distances need not
+ * be the same both ways.
+ *
+ */
+public class TourPlanner {
+
+    // Representation:
+    // stops are node numbers of index. dist[i][j] is the distance from stops[i] to
+    // stops[j] and parents[i] the shortest path tree from stops[i], or both are null
+    // before compute.
+
+    // Time allowed for improving a tour when none is given
+    public static final long DEFAULT_BUDGET_NANOS = 100000000L;
+
+    // Longest run of stops Or-opt moves at once
+    private static final int MAX_SEGMENT = 3;
+
+    // Smallest saving counted as an improvement
+    private static final double EPSILON = 1e-9;
+
+    private final GraphIndex index;
+    private final int[] stops;
+    private double[][] dist;
+    private int[][] parents;
+
+    /**
+     * @param index map to plan on
+     * @param stops numbers of the nodes to visit, the first being the start
+     * @requires stops.length > 0
+     * @effects Constructs a planner for stops
+     */
+    public TourPlanner(GraphIndex index, int[] stops) {
+        this.index = index;
+        this.stops = stops.clone();
+        this.dist = null;
+        this.parents = null;
+    }
+
+    /**
+     * @param pool pool to run the searches in
+     * @modifies this
+     * @effects finds the distance between every pair of stops
+     */
+    public void compute(ExecutorService pool) {
+        final double[][] rows = new double[stops.length][];
+        final int[][] trees = new int[stops.length][];
+        List<Callable<Void>> searches = new ArrayList<Callable<Void>>();
+        for(int i = 0; i < stops.length; i++) {
+            final int from = i;
+            searches.add(new Callable<Void>() {
+                public Void call() {
+                    int[] tree = new int[index.size()];
+                    double[] all = RouteSearch.distances(index, stops[from], tree);
+                    double[] row = new double[stops.length];
+                    for(int j = 0; j < stops.length; j++) {
+                        row[j] = all[stops[j]];
+                    }
+                    rows[from] = row;
+                    trees[from] = tree;
+                    return null;
+                }
+            });
+        }
+        try {
+            for(Future<Void> search : pool.invokeAll(searches)) {
+                search.get();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while measuring the stops.", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Failed to measure the stops.", e.getCause());
+        }
+        dist = rows;
+        parents = trees;
+    }
+
+    /**
+     * @requires compute has been called
+     * @return distance from stop i to stop j, infinite if there is no path
+     */
+    public double getDistance(int i, int j) {
+        return dist[i][j];
+    }
+
+    /**
+     * @param closed whether the tour returns to the first stop at the end
+     * @param budgetNanos time allowed for improving the tour
+     * @requires compute has been called
+     * @return the stops, as positions in the stops given to the constructor, in the
+     *     order to visit them starting with 0, or null if some stop can not be
+     *     reached from another
+     */
+    public int[] plan(boolean closed, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int n = stops.length;
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) {
+                if(dist[i][j] == Double.POSITIVE_INFINITY) {
+                    return null;
+                }
+            }
+        }
+
+        // Stop n stands for the end of the tour, costing nothing to reach
+        // unless the tour goes back to the start
+        double[][] d = new double[n + 1][n + 1];
+        for(int i = 0; i < n; i++) {
+            System.arraycopy(dist[i], 0, d[i], 0, n);
+            d[i][n] = closed ? dist[i][0] : 0.0;
+        }
+
+        int[] tour = nearestNeighbour(d, n);
+        boolean improved = true;
+        while(improved && System.nanoTime() < deadline) {
+            improved = twoOpt(tour, d, deadline);
+            improved = orOpt(tour, d, deadline) || improved;
+        }
+        return Arrays.copyOf(tour, n);
+    }
+
+    /**
+     * @return tour of stops 0 to n-1 starting at 0, always going to the closest
+     *     stop not yet visited, followed by the end n
+     */
+    private static int[] nearestNeighbour(double[][] d, int n) {
+        int[] tour = new int[n + 1];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for(int k = 1; k < n; k++) {
+            int last = tour[k - 1];
+            int next = -1;
+            for(int j = 1; j < n; j++) {
+                if(!visited[j] && (next < 0 || d[last][j] < d[last][next])) {
+                    next = j;
+                }
+            }
+            visited[next] = true;
+            tour[k] = next;
+        }
+        tour[n] = n;
+        return tour;
+    }
+
+    /**
+     * Reverses a stretch of the tour where that makes it shorter, counting the
+     * stretch walked backwards at its own cost.
+     *
+     * @modifies tour
+     * @return true iff the tour was changed
+     */
+    private static boolean twoOpt(int[] tour, double[][] d, long deadline) {
+        int last = tour.length - 2;
+        boolean improved = false;
+        for(int i = 1; i < last && System.nanoTime() < deadline; i++) {
+            double forward = 0.0;
+            double backward = 0.0;
+            for(int j = i + 1; j <= last; j++) {
+                forward += d[tour[j - 1]][tour[j]];
+                backward += d[tour[j]][tour[j - 1]];
+                int a = tour[i - 1];
+                int b = tour[j + 1];
+                double change = d[a][tour[j]] + backward + d[tour[i]][b]
+                        - d[a][tour[i]] - forward - d[tour[j]][b];
+                if(change < -EPSILON) {
+                    for(int l = i, r = j; l < r; l++, r--) {
+                        int swap = tour[l];
+                        tour[l] = tour[r];
+                        tour[r] = swap;
+                    }
+                    improved = true;
+                    // The sums no longer match the tour
+                    forward = 0.0;
+                    backward = 0.0;
+                    for(int k = i + 1; k <= j; k++) {
+                        forward += d[tour[k - 1]][tour[k]];
+                        backward += d[tour[k]][tour[k - 1]];
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Moves runs of up to MAX_SEGMENT consecutive stops to between two other
+     * stops where that makes the tour shorter.
+     *
+     * @modifies tour
+     * @return true iff the tour was changed
+     */
+    private static boolean orOpt(int[] tour, double[][] d, long deadline) {
+        int last = tour.length - 2;
+        boolean improved = false;
+        for(int length = 1; length <= MAX_SEGMENT; length++) {
+            for(int i = 1; i + length - 1 <= last && System.nanoTime() < deadline; i++) {
+                int first = tour[i];
+                int end = tour[i + length - 1];
+                int before = tour[i - 1];
+                int after = tour[i + length];
+                double saved = d[before][first] + d[end][after] - d[before][after];
+                for(int p = 0; p <= last; p++) {
+                    // Edges touching the run itself
+                    if(p >= i - 1 && p <= i + length - 1) {
+                        continue;
+                    }
+                    double added = d[tour[p]][first] + d[end][tour[p + 1]] - d[tour[p]][tour[p + 1]];
+                    if(added - saved < -EPSILON) {
+                        move(tour, i, length, p);
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * @modifies tour
+     * @effects moves the length stops starting at position i to just after
+     *     the stop at position p
+     */
+    private static void move(int[] tour, int i, int length, int p) {
+        int[] run = Arrays.copyOfRange(tour, i, i + length);
+        if(p < i) {
+            System.arraycopy(tour, p + 1, tour, p + 1 + length, i - p - 1);
+            System.arraycopy(run, 0, tour, p + 1, length);
+        } else {
+            System.arraycopy(tour, i + length, tour, i, p - i - length + 1);
+            System.arraycopy(run, 0, tour, p - length + 1, length);
+        }
+    }
+
+    /**
+     * @param order stops in the order to visit them, as returned by plan
+     * @param closed whether the tour returns to the first stop at the end
+     * @requires compute has been called
+     * @return total distance of the tour
+     */
+    public double getLength(int[] order, boolean closed) {
+        double length = 0.0;
+        for(int k = 0; k + 1 < order.length; k++) {
+            length += dist[order[k]][order[k + 1]];
+        }
+        if(closed) {
+            length += dist[order[order.length - 1]][order[0]];
+        }
+        return length;
+    }
+
+    /**
+     * @param order stops in the order to visit them, as returned by plan
+     * @param closed whether the tour returns to the first stop at the end
+     * @requires compute has been called and every stop can be reached from every other
+     * @return numbers of the nodes along the whole tour, each leg joined to the next
+     */
+    public int[] getPath(int[] order, boolean closed) {
+        List<Integer> path = new ArrayList<Integer>();
+        path.add(stops[order[0]]);
+        for(int k = 1; k <= order.length; k++) {
+            if(k == order.length && !closed) {
+                break;
+            }
+            int from = order[k - 1];
+            int to = order[k % order.length];
+            // Walk the tree of from back from to, then reverse the leg onto the path
+            int mark = path.size();
+            for(int v = stops[to]; v != stops[from]; v = parents[from][v]) {
+                path.add(v);
+            }
+            for(int l = mark, r = path.size() - 1; l < r; l++, r--) {
+                Integer swap = path.get(l);
+                path.set(l, path.get(r));
+                path.set(r, swap);
+            }
+        }
+        int[] result = new int[path.size()];
+        for(int k = 0; k < result.length; k++) {
+            result[k] = path.get(k);
+        }
+        return result;
+    }
+
+}
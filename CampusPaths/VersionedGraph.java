@@ -0,0 +1,307 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * A graph that can be edited while it is being read. Every edit builds a new
+ * GraphVersion, copying only the blocks of nodes it changes, and publishes it
+ * atomically. Readers take a snapshot and keep reading that version for as long
+ * as they need it, so edits never block them or show them a half done change.
+ * Edits are made one at a time.
+ *
+ * The mutators behave like those of Graph.
+ *
+ */
+public class VersionedGraph<N,E> {
+
+    // Representation:
+    // current is the latest published version. Writers synchronize on this.
+
+    // Abstraction function:
+    // The graph is the graph of current.get().
+
+    private final AtomicReference<GraphVersion<N,E>> current;
+
+    /**
+     * A version being built from a base version. Blocks and adjacencies are
+     * copied the first time they are changed and never again.
+     */
+    private static class Draft<N,E> {
+        private final Map<N,Map<N,Set<E>>>[] blocks;
+        private final boolean[] copied;
+        private final Set<N> copiedAdjacency;
+        private int size;
+
+        private Draft(GraphVersion<N,E> base) {
+            blocks = base.blocks().clone();
+            copied = new boolean[blocks.length];
+            copiedAdjacency = new HashSet<N>();
+            size = base.size();
+        }
+
+        /**
+         * @return the block of node, copying it if this draft has not yet
+         */
+        private Map<N,Map<N,Set<E>>> block(N node) {
+            int b = GraphVersion.blockOf(node);
+            if(!copied[b]) {
+                blocks[b] = new HashMap<N,Map<N,Set<E>>>(blocks[b]);
+                copied[b] = true;
+            }
+            return blocks[b];
+        }
+
+        /**
+         * @return the adjacency of node, copying it if this draft has not yet
+         * @requires node to be in the draft
+         */
+        private Map<N,Set<E>> adjacency(N node) {
+            Map<N,Map<N,Set<E>>> block = block(node);
+            if(copiedAdjacency.add(node)) {
+                block.put(node, new HashMap<N,Set<E>>(block.get(node)));
+            }
+            return block.get(node);
+        }
+
+        private boolean contains(N node) {
+            return blocks[GraphVersion.blockOf(node)].containsKey(node);
+        }
+
+        private Set<E> edges(N node1, N node2) {
+            Set<E> edges = blocks[GraphVersion.blockOf(node1)].get(node1).get(node2);
+            return edges == null ? new HashSet<E>() : edges;
+        }
+
+        /**
+         * @effects sets the edges from node1 to node2, removing node2 as a
+         *     child of node1 if edges is empty
+         */
+        private void setEdges(N node1, N node2, Set<E> edges) {
+            if(edges.isEmpty()) {
+                adjacency(node1).remove(node2);
+            } else {
+                adjacency(node1).put(node2, edges);
+            }
+        }
+
+        private GraphVersion<N,E> publish(long version) {
+            return new GraphVersion<N,E>(version, blocks, size);
+        }
+    }
+
+    /**
+     * @effects Constructs a new empty graph
+     */
+    public VersionedGraph() {
+        @SuppressWarnings("unchecked")
+        Map<N,Map<N,Set<E>>>[] blocks = (Map<N,Map<N,Set<E>>>[])new Map<?,?>[GraphVersion.BLOCKS];
+        for(int b = 0; b < blocks.length; b++) {
+            blocks[b] = new HashMap<N,Map<N,Set<E>>>();
+        }
+        current = new AtomicReference<GraphVersion<N,E>>(new GraphVersion<N,E>(0, blocks, 0));
+    }
+
+    /**
+     * @param graph graph to copy
+     * @effects Constructs a new graph with the nodes and edges of graph
+     */
+    public VersionedGraph(ReadableGraph<N,E> graph) {
+        this();
+        Draft<N,E> draft = new Draft<N,E>(current.get());
+        Set<N> nodes = graph.getNodes();
+        for(N node : nodes) {
+            draft.block(node).put(node, new HashMap<N,Set<E>>());
+            draft.size = draft.size + 1;
+        }
+        for(N node : nodes) {
+            Map<N,Set<E>> adjacency = draft.block(node).get(node);
+            for(N child : graph.getChildren(node)) {
+                Set<E> edges = new HashSet<E>(graph.getEdges(node, child));
+                if(!edges.isEmpty()) {
+                    adjacency.put(child, edges);
+                }
+            }
+        }
+        current.set(draft.publish(0));
+    }
+
+    /**
+     * @return the latest version of the graph, which never changes
+     */
+    public GraphVersion<N,E> snapshot() {
+        return current.get();
+    }
+
+    /**
+     * @return number of the latest version of the graph
+     */
+    public long getVersion() {
+        return current.get().getVersion();
+    }
+
+    /**
+        @param nodeVal label of new node
+        @modifies this
+        @effects adds a node with label nodeVal to the graph
+            starting with no edges connecting it to any other node.
+        @throws IllegalArgumentException if there is already a node in
+            the graph with nodeVal
+    */
+    public synchronized void addNode(N nodeVal) {
+        GraphVersion<N,E> base = current.get();
+        if(base.containsNode(nodeVal)) {
+            throw new IllegalArgumentException("There already exists a node in the graph "
+                    + "with label " + nodeVal + ".");
+        }
+        Draft<N,E> draft = new Draft<N,E>(base);
+        draft.block(nodeVal).put(nodeVal, new HashMap<N,Set<E>>());
+        draft.size = draft.size + 1;
+        current.set(draft.publish(base.getVersion() + 1));
+    }
+
+    /**
+        @param nodeVal Label of node to be removed
+        @modifies this
+        @effects removes the node with label nodeVal from the graph,
+            removing all edges too and from the node.
+        @throws IllegalArgumentException if there is no node in
+            the graph with nodeVal
+    */
+    public synchronized void removeNode(N nodeVal) {
+        GraphVersion<N,E> base = current.get();
+        if(!base.containsNode(nodeVal)) {
+            throw new IllegalArgumentException("There does not exist a node in the graph "
+                    + "with label " + nodeVal + ".");
+        }
+        Draft<N,E> draft = new Draft<N,E>(base);
+        // Only blocks holding a node with an edge to nodeVal are copied
+        for(Map<N,Map<N,Set<E>>> block : base.blocks()) {
+            for(Map.Entry<N,Map<N,Set<E>>> entry : block.entrySet()) {
+                if(entry.getValue().containsKey(nodeVal)) {
+                    draft.adjacency(entry.getKey()).remove(nodeVal);
+                }
+            }
+        }
+        draft.block(nodeVal).remove(nodeVal);
+        draft.size = draft.size - 1;
+        current.set(draft.publish(base.getVersion() + 1));
+    }
+
+    /**
+        @param node1 label of first node
+        @param node2 label of second node
+        @param edgeLabel label of edge to be placed into graph
+        @modifies this
+        @effects Adds the edge with edgeLabel into the graph pointing from node1 to node2
+        @throws IllegalArgumentException if node1 or node2 are not in the graph
+        @throws IllegalArgumentException if there is already an edge from
+             node1 to node2 with edgeLabel
+    */
+    public synchronized void addEdge(N node1, N node2, E edgeLabel) {
+        GraphVersion<N,E> base = current.get();
+        if(!base.containsNode(node1) || !base.containsNode(node2)) {
+            throw new IllegalArgumentException("Node passed does not exist in the graph.");
+        }
+        Draft<N,E> draft = new Draft<N,E>(base);
+        Set<E> edges = new HashSet<E>(draft.edges(node1, node2));
+        if(!edges.add(edgeLabel)) {
+            throw new IllegalArgumentException("There already exists an edge between passed nodes "
+                    + "with label " + edgeLabel + ".");
+        }
+        draft.setEdges(node1, node2, edges);
+        current.set(draft.publish(base.getVersion() + 1));
+    }
+
+    /**
+        @param node1 label of first node
+        @param node2 label of second node
+        @param edgeLabel Label of edge to be removed from graph
+        @modifies this
+        @effects Removes the edge from node1 to node2 with edgeLabel from the graph
+        @throws IllegalArgumentException if node1 or node2 are not in the graph
+        @throws IllegalArgumentException if there is not an edge from
+             node1 to node2 with edgeLabel
+    */
+    public synchronized void removeEdge(N node1, N node2, E edgeLabel) {
+        GraphVersion<N,E> base = current.get();
+        if(!base.containsNode(node1) || !base.containsNode(node2)) {
+            throw new IllegalArgumentException("Node passed does not exist in the graph.");
+        }
+        Draft<N,E> draft = new Draft<N,E>(base);
+        Set<E> edges = new HashSet<E>(draft.edges(node1, node2));
+        if(!edges.remove(edgeLabel)) {
+            throw new IllegalArgumentException("There does not exist an edge between passed nodes "
+                    + "with label " + edgeLabel + ".");
+        }
+        draft.setEdges(node1, node2, edges);
+        current.set(draft.publish(base.getVersion() + 1));
+    }
+
+    /**
+        @param node1 label of first node
+        @param node2 label of second node
+        @param edges set of edge labels for edges to be added to graph
+        @modifies this
+        @throws IllegalArgumentException if node1 or node2 are not in the graph
+        @effects replaces the edges from node1 to node2 with the edges
+            with edge labels from the the set edges
+    */
+    public synchronized void setEdges(N node1, N node2, Set<E> edges) {
+        GraphVersion<N,E> base = current.get();
+        if(!base.containsNode(node1) || !base.containsNode(node2)) {
+            throw new IllegalArgumentException("Node passed does not exist in the graph.");
+        }
+        Draft<N,E> draft = new Draft<N,E>(base);
+        draft.setEdges(node1, node2, new HashSet<E>(edges));
+        current.set(draft.publish(base.getVersion() + 1));
+    }
+
+    /**
+        @param oldLabel Label who's label is to be replaced
+        @param newLabel New label for node with label oldLabel
+        @modifies this
+        @effects changes the label of the node with label oldLabel to newLabel
+            preserves all connections the node had with any other nodes.
+        @throws IllegalArgumentException if there is no node in
+            the graph with oldLabel
+        @throws IllegalArgumentException if there already exists a node in
+            the graph with newLabel
+    */
+    public synchronized void setNode(N oldLabel, N newLabel) {
+        GraphVersion<N,E> base = current.get();
+        if(!base.containsNode(oldLabel)) {
+            throw new IllegalArgumentException("There does not exist a node in the graph "
+                    + "with label " + oldLabel + ".");
+        }
+        if(base.containsNode(newLabel)) {
+            throw new IllegalArgumentException("There already exists a node in the graph "
+                    + "with label " + newLabel + ".");
+        }
+        Draft<N,E> draft = new Draft<N,E>(base);
+
+        // Edges out of oldLabel, a circular edge becomes one from newLabel to itself
+        Map<N,Set<E>> moved = new HashMap<N,Set<E>>();
+        for(Map.Entry<N,Set<E>> entry : base.adjacency(oldLabel).entrySet()) {
+            N child = entry.getKey().equals(oldLabel) ? newLabel : entry.getKey();
+            moved.put(child, entry.getValue());
+        }
+
+        // Edges into oldLabel from other nodes
+        for(Map<N,Map<N,Set<E>>> block : base.blocks()) {
+            for(Map.Entry<N,Map<N,Set<E>>> entry : block.entrySet()) {
+                if(!entry.getKey().equals(oldLabel) && entry.getValue().containsKey(oldLabel)) {
+                    Map<N,Set<E>> adjacency = draft.adjacency(entry.getKey());
+                    adjacency.put(newLabel, adjacency.remove(oldLabel));
+                }
+            }
+        }
+
+        draft.block(oldLabel).remove(oldLabel);
+        draft.block(newLabel).put(newLabel, moved);
+        current.set(draft.publish(base.getVersion() + 1));
+    }
+
+}